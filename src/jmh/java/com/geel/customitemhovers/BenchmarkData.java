@@ -0,0 +1,162 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.ItemComposition;
+import net.runelite.client.game.ItemManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Shared inputs for the benchmarks: realistic hover texts, a synthetic item catalog, generated hover packs, and
+ * stand-ins for the client objects the plugin reads from.
+ */
+class BenchmarkData {
+    //Fixed seed, so every run benchmarks the same catalog and packs
+    private static final long SEED = 0x5EED;
+
+    /**
+     * Hover texts in the style of the files in `examples/`, from constant to heavily templated.
+     */
+    static final String[] HOVER_TEXTS = {
+            //Constant (herblore.json)
+            "<col=47cfd4>Attack Potion</col></br>-Eye of Newt</br>-Level 3</br>-25 XP",
+            //Constant, long (gems.json)
+            "<col=47cfd4>Can Create</col></br><col=2ecc71>Ring of Pursuit</col></br>-Level: 1</br>-Alch: 630"
+                    + "</br><col=2ecc71>Dodgy Necklace</col></br>-Level: 16</br>-Alch: 630</br><col=2ecc71>"
+                    + "Expeditious Bracelet</col></br>-Level: 22</br>-Alch: 690",
+            //Quantity only (ensouled_heads.json)
+            "<col=3498db>---Reanimation---</col></br>Adept (Level 41)</br>XP:</br>  •Prayer: 650 "
+                    + "(<%qtymult(650)%>)</br>  •Magic: 80 (<%qtymult(80)%>)</br>Runes:</br>  •Soul (1x) "
+                    + "(<%QTY%>)</br>  •Nature (3x) (<%qtymult(3)%>)</br>  •Body (4x) (<%qtymult(4)%>)",
+            //Item and quantity
+            "ID: <%ID%></br>Value: <%VALUE%> (<%qtymult(<%VALUE%>)%>)</br>High alch: <%HIGH_ALCH%> "
+                    + "(<%qtymult(<%HIGH_ALCH%>)%>)",
+            //Expressions
+            "Profit: <%HIGH_ALCH - VALUE%> (<%qtymult(HIGH_ALCH - VALUE, compact)%>)</br>XP: <%QTY * 650 / 2%>"
+                    + "</br>Best: <%max(VALUE, HIGH_ALCH)%>",
+    };
+
+    private static final String[] NAME_PREFIXES = {
+            "Bronze", "Iron", "Steel", "Black", "Mithril", "Adamant", "Rune", "Dragon", "Grimy", "Uncut", "Ensouled",
+            "Super", "Extended", "Divine", "Blessed", "Corrupted", "Crystal", "Oak", "Willow", "Maple", "Yew", "Magic",
+    };
+
+    private static final String[] NAME_ITEMS = {
+            "platebody", "platelegs", "full helm", "kiteshield", "scimitar", "longsword", "dagger", "arrow", "bolts",
+            "bar", "ore", "logs", "shortbow", "longbow", "guam leaf", "ranarr weed", "snapdragon", "goblin head",
+            "dragon head", "attack potion", "strength potion", "antifire", "sapphire", "emerald", "ruby", "diamond",
+    };
+
+    private static final String[] NAME_SUFFIXES = {"", "", "", "(4)", "(3)", "(2)", "(1)", "(p)", "(p+)", "(p++)",
+            "(g)", "(t)", "(unf)", "(broken)", "(damaged)"};
+
+    /**
+     * Generates a catalog of distinct, plausible item names.
+     */
+    static List<String> itemNames(int count) {
+        Random random = new Random(SEED);
+        List<String> names = new ArrayList<>(count);
+        Map<String, Integer> seen = new HashMap<>();
+
+        while (names.size() < count) {
+            String name = (NAME_PREFIXES[random.nextInt(NAME_PREFIXES.length)] + " "
+                    + NAME_ITEMS[random.nextInt(NAME_ITEMS.length)]
+                    + " " + NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)]).trim();
+
+            //Keep names distinct, like the keys of the real name table
+            int variant = seen.merge(name, 1, Integer::sum);
+            names.add(variant == 1 ? name : name + " (v" + variant + ")");
+        }
+
+        return names;
+    }
+
+    /**
+     * Writes `files` hover files of `defsPerFile` hovers each into `dir`.
+     */
+    static void writeHoverPack(Path dir, int files, int defsPerFile) throws IOException {
+        Random random = new Random(SEED);
+
+        for (int f = 0; f < files; f++) {
+            StringBuilder json = new StringBuilder("{\n  \"is_hover_map\": \"absolutely\",\n  \"hovers\": [\n");
+
+            for (int d = 0; d < defsPerFile; d++) {
+                if (d > 0)
+                    json.append(",\n");
+
+                json.append("    {\"ids\": [").append(random.nextInt(30000)).append("], ")
+                        .append("\"items\": [\"").append(NAME_PREFIXES[random.nextInt(NAME_PREFIXES.length)])
+                        .append(' ').append(NAME_ITEMS[random.nextInt(NAME_ITEMS.length)]).append("\"], ")
+                        .append("\"hovers\": [[");
+
+                String[] lines = HOVER_TEXTS[random.nextInt(HOVER_TEXTS.length)].split("</br>");
+                for (int l = 0; l < lines.length; l++) {
+                    if (l > 0)
+                        json.append(", ");
+                    json.append('"').append(lines[l].replace("\"", "\\\"")).append('"');
+                }
+
+                json.append("]]}");
+            }
+
+            json.append("\n  ]\n}\n");
+            Files.write(dir.resolve("pack" + f + ".json"), json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * A composition whose price and high-alch value are derived from its ID.
+     *
+     * Stub-only mocks don't record their invocations, so they can be called indefinitely without growing.
+     */
+    static ItemComposition itemComposition(int itemID) {
+        ItemComposition comp = mock(ItemComposition.class, withSettings().stubOnly());
+        when(comp.getId()).thenReturn(itemID);
+        when(comp.getName()).thenReturn("Item " + itemID);
+        when(comp.getPrice()).thenReturn(itemID * 5);
+        when(comp.getHaPrice()).thenReturn(itemID * 3);
+
+        return comp;
+    }
+
+    /**
+     * An ItemManager over `itemCount` items, where every item is its own canonical item.
+     *
+     * Calls into the stand-in go through Mockito, which costs time and allocates; `GetItemHoversBenchmark.standIn`
+     * measures that overhead on its own so it can be subtracted.
+     */
+    static ItemManager itemManager(int itemCount) {
+        ItemComposition[] comps = new ItemComposition[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            comps[i] = itemComposition(i);
+        }
+
+        ItemManager itemManager = mock(ItemManager.class, withSettings().stubOnly());
+        when(itemManager.canonicalize(anyInt())).thenAnswer(inv -> inv.getArgument(0));
+        when(itemManager.getItemComposition(anyInt())).thenAnswer(inv -> comps[inv.<Integer>getArgument(0)]);
+
+        return itemManager;
+    }
+}
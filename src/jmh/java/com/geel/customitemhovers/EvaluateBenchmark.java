@@ -0,0 +1,46 @@
+package com.geel.customitemhovers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating a single compiled template, as done for every uncached hover box.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+    //Index into `BenchmarkData.HOVER_TEXTS`
+    @Param({"0", "1", "2", "3"})
+    public int text;
+
+    private final HoverEvaluator evaluator = new HoverEvaluator();
+    private final HoverContext ctx = new HoverContext();
+    private HoverTemplate template;
+
+    @Setup
+    public void setUp() {
+        template = HoverTemplate.Compile(BenchmarkData.HOVER_TEXTS[text], new ArrayList<>());
+        ctx.set(4151, 25, 4151 * 5, 4151 * 3);
+    }
+
+    @Benchmark
+    public String evaluate() {
+        return evaluator.Evaluate(template, ctx);
+    }
+}
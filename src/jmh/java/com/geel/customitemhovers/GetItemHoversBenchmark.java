@@ -0,0 +1,121 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.Item;
+import net.runelite.client.game.ItemManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * `CustomItemHoversPlugin.getItemHovers`, which the overlay calls every frame while an item is hovered.
+ *
+ * The plugin reads items through stand-in client objects (see `BenchmarkData.itemManager`); `standIn` measures just
+ * the stand-in calls, as a baseline to subtract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetItemHoversBenchmark {
+    private static final int ITEM_COUNT = 2048;
+
+    //Every HOVERED_STRIDE'th item has hovers
+    private static final int HOVERED_STRIDE = 4;
+
+    private CustomItemHoversPlugin plugin;
+    private ItemManager itemManager;
+
+    //Items hovered in turn by `cycleItems`, with a mix of stack sizes
+    private Item[] items;
+    private int next;
+
+    private Item hoveredItem;
+
+    @Setup
+    public void setUp() throws Exception {
+        itemManager = BenchmarkData.itemManager(ITEM_COUNT);
+
+        HoverIndex.Builder builder = new HoverIndex.Builder();
+        for (int i = 0; i < BenchmarkData.HOVER_TEXTS.length; i++) {
+            HoverDef d = new HoverDef();
+            d.Templates = new HoverTemplate[]{HoverTemplate.Compile(BenchmarkData.HOVER_TEXTS[i], new ArrayList<>())};
+
+            //Each def targets every HOVERED_STRIDE'th item, so hovered items have every text
+            d.ItemIDs = new int[ITEM_COUNT / HOVERED_STRIDE];
+            for (int j = 0; j < d.ItemIDs.length; j++) {
+                d.ItemIDs[j] = j * HOVERED_STRIDE;
+            }
+
+            builder.add(d);
+        }
+
+        plugin = new CustomItemHoversPlugin();
+        setField(plugin, "itemManager", itemManager);
+        setField(plugin, "hoverColor", Color.WHITE);
+        getHoverIndex(plugin).set(builder.build(ITEM_COUNT));
+
+        items = new Item[1024];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item((i * 7) % ITEM_COUNT, 1 + (i % 5) * 100);
+        }
+
+        hoveredItem = new Item(HOVERED_STRIDE * 10, 25);
+    }
+
+    /**
+     * The same item hovered frame after frame.
+     */
+    @Benchmark
+    public String[] sameItem() {
+        return plugin.getItemHovers(hoveredItem);
+    }
+
+    /**
+     * A different item (with or without hovers) every call, eg. moving the mouse across the bank.
+     */
+    @Benchmark
+    public String[] cycleItems() {
+        Item item = items[next];
+        next = (next + 1) & (items.length - 1);
+
+        return plugin.getItemHovers(item);
+    }
+
+    /**
+     * Only the stand-in calls `getItemHovers` makes for an item whose hovers aren't memoized.
+     */
+    @Benchmark
+    public Object standIn() {
+        return itemManager.getItemComposition(itemManager.canonicalize(hoveredItem.getId()));
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field f = target.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReference<HoverIndex> getHoverIndex(CustomItemHoversPlugin plugin)
+            throws ReflectiveOperationException {
+        Field f = CustomItemHoversPlugin.class.getDeclaredField("hoverIndex");
+        f.setAccessible(true);
+
+        return (AtomicReference<HoverIndex>) f.get(plugin);
+    }
+}
@@ -0,0 +1,115 @@
+package com.geel.customitemhovers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Resolving `items_regex` patterns against a synthetic catalog the size of the real one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemNameRegexBenchmark {
+    private static final int NAME_COUNT = 30_000;
+
+    @Param({
+            "Ensouled .* head",
+            "(Grimy )?(G|g)uam (leaf|seed|potion \\(unf\\))",
+            ".*potion.*\\((4|3|2|1)\\)",
+            "(?i).*rune.*",
+    })
+    public String regex;
+
+    private Map<String, ArrayList<Integer>> names;
+    private List<HoverDef> defs;
+
+    @Setup
+    public void setUp() throws Exception {
+        names = new HashMap<>();
+        int id = 0;
+        for (String name : BenchmarkData.itemNames(NAME_COUNT)) {
+            names.put(name, new ArrayList<>(Collections.singletonList(id++)));
+        }
+
+        //Install the catalog the same way offline tools do, through the name cache
+        Path cacheFile = Files.createTempFile("customitemhovers-bench", ".cache");
+        try {
+            ItemNameMapCache.Save(cacheFile, NAME_COUNT, 1, names);
+
+            if (!ItemNameMap.PrepareMapFromCache(cacheFile))
+                throw new IllegalStateException("Couldn't install synthetic item names");
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+
+        HoverDef d = new HoverDef();
+        d.ItemNamesRegex = new String[]{regex};
+        defs = Collections.singletonList(d);
+    }
+
+    /**
+     * Scanning every name for the one pattern, within its budget, as each `items_regex` pattern used to be.
+     */
+    @Benchmark
+    public ArrayList<Integer> getItemIDsRegex() {
+        ArrayList<Integer> ret = new ArrayList<>(1);
+        RegexGuard.BudgetedMatcher matcher = new RegexGuard.BudgetedMatcher(Pattern.compile(regex));
+        long steps = 0;
+        Set<Integer> seen = new HashSet<>();
+
+        for (Map.Entry<String, ArrayList<Integer>> entry : names.entrySet()) {
+            boolean matches;
+            try {
+                matches = matcher.matches(entry.getKey());
+                steps += matcher.takeSteps();
+            } catch (RegexGuard.BudgetExceededException e) {
+                return new ArrayList<>(1);
+            }
+
+            if (steps > RegexGuard.PATTERN_STEPS)
+                return new ArrayList<>(1);
+
+            if (!matches)
+                continue;
+
+            for (int itemID : entry.getValue()) {
+                if (seen.add(itemID))
+                    ret.add(itemID);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * The batch resolver used when hover files are loaded, for comparison.
+     */
+    @Benchmark
+    public Object resolve() {
+        return ItemRegexResolver.Resolve(defs);
+    }
+}
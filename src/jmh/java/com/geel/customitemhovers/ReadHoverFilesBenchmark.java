@@ -0,0 +1,54 @@
+package com.geel.customitemhovers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading, parsing and compiling generated hover packs of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadHoverFilesBenchmark {
+    private static final int DEFS_PER_FILE = 100;
+
+    @Param({"1", "10", "100"})
+    public int files;
+
+    private Path dir;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("customitemhovers-bench");
+        BenchmarkData.writeHoverPack(dir, files, DEFS_PER_FILE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public ArrayList<HoverFile> readHoverFiles() {
+        return HoverFileParser.readHoverFiles(dir);
+    }
+}
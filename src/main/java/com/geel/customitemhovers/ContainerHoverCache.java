@@ -0,0 +1,330 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.client.game.ItemManager;
+import net.runelite.client.util.ColorUtil;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Hovers evaluated ahead of time for every slot of the containers hovers are shown for (the inventory, bank and seed
+ * vault), so the first hover over each slot doesn't have to evaluate anything.
+ *
+ * When a container changes, the client thread works out which slots changed and snapshots what their hovers need
+ * (`ItemManager`, which is the fallback until the item name map is ready, may only be used on the client thread). A
+ * worker then evaluates those slots in one batch, copies the results of unchanged slots over from the container's
+ * previous results, and publishes the lot.
+ *
+ * Published results are immutable. A slot's result is only used if it was evaluated for the item and stack size in
+ * that slot now, with the current hover index, color and prices, and the item's current quantity totals (see
+ * `ItemQuantityTable`), so a slot which has changed since is a miss (and evaluated on demand) until its batch is done.
+ */
+@Slf4j
+class ContainerHoverCache {
+    //The containers whose hovers are evaluated ahead of time
+    static final InventoryID[] CONTAINERS = {InventoryID.INVENTORY, InventoryID.BANK, InventoryID.SEED_VAULT};
+
+    private static final String[] NO_HOVERS = new String[0];
+
+    //Size of the worker's own tooltip cache, which dedupes evaluations within and between batches
+    private static final int WORKER_CACHE_SIZE = 1024;
+
+    private final Executor executor;
+    private final HoverMetrics metrics;
+    private final ItemQuantityTable quantities;
+    private final ItemPriceTable prices;
+
+    //Latest published results, by container ID
+    private final Map<Integer, Results> results = new ConcurrentHashMap<>();
+
+    //What was last sent to the worker for each container; only used on the client thread
+    private final Map<Integer, Results> requested = new ConcurrentHashMap<>();
+
+    //Batches waiting for the worker, in the order they were made
+    private final Queue<Batch> pending = new ConcurrentLinkedQueue<>();
+
+    //Only used by the worker, while holding `this`
+    private final HoverEvaluator evaluator = new HoverEvaluator();
+    private final HoverContext context = new HoverContext();
+    private final TooltipCache workerCache = new TooltipCache(WORKER_CACHE_SIZE);
+    private HoverIndex workerCacheIndex;
+    private Color workerCacheColor;
+    private int workerCachePriceVersion;
+
+    ContainerHoverCache(Executor executor, HoverMetrics metrics, ItemQuantityTable quantities,
+                        ItemPriceTable prices) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.quantities = quantities;
+        this.prices = prices;
+    }
+
+    /**
+     * @return True if `containerId` is one of `CONTAINERS`
+     */
+    static boolean isSupported(int containerId) {
+        for (InventoryID id : CONTAINERS) {
+            if (id.getId() == containerId)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The hovers evaluated ahead of time for `item` in the given slot, or null if there aren't any up to date
+     */
+    String[] get(int containerId, int slot, Item item, HoverIndex index, Color color) {
+        Results r = results.get(containerId);
+
+        if (r == null || r.index != index || r.color != color || r.priceVersion != prices.getVersion()
+                || slot < 0 || slot >= r.itemIDs.length)
+            return null;
+
+        if (r.itemIDs[slot] != item.getId() || r.quantities[slot] != item.getQuantity()
+                || r.versions[slot] != quantities.getVersion(r.canonicalIDs[slot]))
+            return null;
+
+        return r.hovers[slot];
+    }
+
+    /**
+     * Queues evaluation of every slot of a container which changed since the last call, or whose item's quantity
+     * totals changed.
+     *
+     * Must be called on the client thread.
+     */
+    void update(int containerId, Item[] items, HoverIndex index, Color color, ItemManager itemManager) {
+        Results previous = requested.get(containerId);
+        int priceVersion = prices.getVersion();
+        boolean reuse = previous != null && previous.index == index && previous.color == color
+                && previous.priceVersion == priceVersion;
+
+        Results next = new Results(index, color, priceVersion, items.length);
+        Batch batch = new Batch(containerId, next);
+
+        for (int slot = 0; slot < items.length; slot++) {
+            Item item = items[slot];
+            boolean sameItem = previous != null && slot < previous.itemIDs.length
+                    && previous.itemIDs[slot] == item.getId();
+
+            int canonicalID;
+            if (sameItem) {
+                canonicalID = previous.canonicalIDs[slot];
+            } else {
+                canonicalID = item.getId() < 0 ? -1 : ItemNameMap.Canonicalize(itemManager, item.getId());
+            }
+
+            next.itemIDs[slot] = item.getId();
+            next.canonicalIDs[slot] = canonicalID;
+            next.quantities[slot] = item.getQuantity();
+            next.versions[slot] = quantities.getVersion(canonicalID);
+
+            if (reuse && sameItem && previous.quantities[slot] == item.getQuantity()
+                    && previous.versions[slot] == next.versions[slot])
+                continue;
+
+            //Empty slots, and items without hovers, are done straight away
+            HoverTemplate[] templates = canonicalID < 0 ? null : index.get(canonicalID);
+
+            if (templates == null) {
+                batch.add(slot, null, 0, 0, 0);
+                continue;
+            }
+
+            batch.add(slot, templates, ItemNameMap.GetPrice(itemManager, canonicalID),
+                    ItemNameMap.GetHighAlch(itemManager, canonicalID), prices.get(canonicalID));
+            batch.addTotals(quantities.getInventory(canonicalID), quantities.getBank(canonicalID),
+                    quantities.getSeedVault(canonicalID));
+        }
+
+        requested.put(containerId, next);
+
+        if (batch.size == 0 && reuse)
+            return;
+
+        pending.add(batch);
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Drops every result, and anything waiting to be evaluated.
+     */
+    void clear() {
+        pending.clear();
+        requested.clear();
+        results.clear();
+    }
+
+    /**
+     * Evaluates queued batches in order. Each call to `update` queues a call to this, but whichever runs first does
+     * all the work; batches are never reordered, since each one builds on the results of the one before.
+     */
+    private synchronized void drain() {
+        Batch batch;
+        while ((batch = pending.poll()) != null) {
+            long start = metrics.start();
+
+            try {
+                evaluate(batch);
+            } catch (Exception e) {
+                log.error("[CUSTOMITEMHOVERS] Failed to evaluate container hovers", e);
+                requested.remove(batch.containerId);
+                results.remove(batch.containerId);
+                continue;
+            }
+
+            metrics.precompute.recordSince(start);
+        }
+    }
+
+    private void evaluate(Batch batch) {
+        Results next = batch.results;
+
+        if (next.index != workerCacheIndex || next.color != workerCacheColor
+                || next.priceVersion != workerCachePriceVersion) {
+            workerCache.clear();
+            workerCacheIndex = next.index;
+            workerCacheColor = next.color;
+            workerCachePriceVersion = next.priceVersion;
+        }
+
+        //Slots which weren't in the batch are unchanged since the previous batch for this container
+        Results previous = results.get(batch.containerId);
+        if (previous != null && previous.index == next.index && previous.color == next.color
+                && previous.priceVersion == next.priceVersion) {
+            System.arraycopy(previous.hovers, 0, next.hovers, 0, Math.min(previous.hovers.length, next.hovers.length));
+        }
+
+        for (int i = 0; i < batch.size; i++) {
+            int slot = batch.slots[i];
+            HoverTemplate[] templates = batch.templates[i];
+
+            if (templates == null) {
+                next.hovers[slot] = NO_HOVERS;
+                continue;
+            }
+
+            context.set(next.itemIDs[slot], next.quantities[slot], batch.prices[i], batch.highAlchs[i])
+                    .setGePrice(batch.gePrices[i]);
+            context.setTotals(batch.inventoryQuantities[i], batch.bankQuantities[i], batch.vaultQuantities[i],
+                    next.versions[slot]).setContainer(batch.containerId);
+
+            //Hovers whose condition is false are left out without being evaluated
+            String[] hovers = new String[templates.length];
+            int count = 0;
+            for (HoverTemplate t : templates) {
+                if (t.test(context))
+                    hovers[count++] = evaluate(t, next.color);
+            }
+
+            if (count < hovers.length)
+                hovers = count == 0 ? NO_HOVERS : Arrays.copyOf(hovers, count);
+
+            next.hovers[slot] = hovers;
+        }
+
+        results.put(batch.containerId, next);
+    }
+
+    private String evaluate(HoverTemplate t, Color color) {
+        long key = t.cacheKey(context);
+        int stamp = t.cacheStamp(context);
+        String text = workerCache.get(t.getID(), key, stamp);
+
+        if (text == null) {
+            text = ColorUtil.prependColorTag(evaluator.Evaluate(t, context), color);
+            workerCache.put(t.getID(), key, stamp, text);
+        }
+
+        return text;
+    }
+
+    /**
+     * A container's hovers, per slot, and what they were evaluated for.
+     */
+    private static class Results {
+        final HoverIndex index;
+        final Color color;
+        final int priceVersion;
+        final int[] itemIDs;
+        final int[] canonicalIDs;
+        final int[] quantities;
+
+        //`ItemQuantityTable` versions of each slot's item
+        final int[] versions;
+
+        //Null for slots which haven't been evaluated
+        final String[][] hovers;
+
+        Results(HoverIndex index, Color color, int priceVersion, int size) {
+            this.index = index;
+            this.color = color;
+            this.priceVersion = priceVersion;
+            this.itemIDs = new int[size];
+            this.canonicalIDs = new int[size];
+            this.quantities = new int[size];
+            this.versions = new int[size];
+            this.hovers = new String[size][];
+        }
+    }
+
+    /**
+     * The changed slots of a container, with everything needed to evaluate their hovers off the client thread.
+     */
+    private static class Batch {
+        final int containerId;
+        final Results results;
+
+        int size = 0;
+        int[] slots;
+        HoverTemplate[][] templates;
+        int[] prices;
+        int[] highAlchs;
+        int[] gePrices;
+        int[] inventoryQuantities;
+        int[] bankQuantities;
+        int[] vaultQuantities;
+
+        Batch(int containerId, Results results) {
+            this.containerId = containerId;
+            this.results = results;
+
+            int capacity = results.itemIDs.length;
+            slots = new int[capacity];
+            templates = new HoverTemplate[capacity][];
+            prices = new int[capacity];
+            highAlchs = new int[capacity];
+            gePrices = new int[capacity];
+            inventoryQuantities = new int[capacity];
+            bankQuantities = new int[capacity];
+            vaultQuantities = new int[capacity];
+        }
+
+        void add(int slot, HoverTemplate[] slotTemplates, int price, int highAlch, int gePrice) {
+            slots[size] = slot;
+            templates[size] = slotTemplates;
+            prices[size] = price;
+            highAlchs[size] = highAlch;
+            gePrices[size] = gePrice;
+            size++;
+        }
+
+        /**
+         * Sets the quantity totals of the slot last added.
+         */
+        void addTotals(int inventoryQuantity, int bankQuantity, int vaultQuantity) {
+            inventoryQuantities[size - 1] = inventoryQuantity;
+            bankQuantities[size - 1] = bankQuantity;
+            vaultQuantities[size - 1] = vaultQuantity;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.geel.customitemhovers;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
+import net.runelite.client.config.Units;
 
 import java.awt.*;
 
@@ -39,4 +41,64 @@ public interface CustomItemHoversConfig extends Config
 	{
 		return "openhoverdir";
 	}
+
+	@ConfigItem(
+			keyName = "metricsChatCommand",
+			name = "Metrics Chat Command",
+			description = "Chat command to write the collected performance metrics, and the hover index's memory use, to the log",
+			position = 4
+	)
+	default String metricsChatCommand()
+	{
+		return "hovermetrics";
+	}
+
+	@ConfigItem(
+			keyName = "showMetrics",
+			name = "Performance Metrics",
+			description = "Collects timings of hover rendering and loading, and shows them in an overlay",
+			position = 5
+	)
+	default boolean showMetrics()
+	{
+		return false;
+	}
+
+	@Range(
+			min = 1,
+			max = 50
+	)
+	@Units(Units.MILLISECONDS)
+	@ConfigItem(
+			keyName = "nameMapBuildBudget",
+			name = "Item Name Build Budget",
+			description = "When the item name map has to be rebuilt, how much time per client tick to spend on it",
+			position = 6
+	)
+	default int nameMapBuildBudget()
+	{
+		return 4;
+	}
+
+	@ConfigItem(
+			keyName = "lazyRegexTargets",
+			name = "Lazy Regex Targets",
+			description = "Match items_regex against an item's name the first time it's hovered, rather than against every item when hovers are loaded",
+			position = 7
+	)
+	default boolean lazyRegexTargets()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+			keyName = "shareHoverIndex",
+			name = "Share Hovers Between Clients",
+			description = "When running several clients, load hovers once and let the other clients use the result, rather than each loading every hover file",
+			position = 8
+	)
+	default boolean shareHoverIndex()
+	{
+		return false;
+	}
 }
@@ -0,0 +1,68 @@
+package com.geel.customitemhovers;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+
+import javax.inject.Inject;
+import java.awt.*;
+
+/**
+ * Debug overlay showing the metrics collected by `HoverMetrics`, while they're enabled.
+ */
+class CustomItemHoversMetricsOverlay extends OverlayPanel
+{
+	private final CustomItemHoversPlugin plugin;
+
+	@Inject
+	CustomItemHoversMetricsOverlay(CustomItemHoversPlugin plugin)
+	{
+		setPosition(OverlayPosition.TOP_LEFT);
+		this.plugin = plugin;
+	}
+
+	@Override
+	public Dimension render(Graphics2D graphics)
+	{
+		HoverMetrics metrics = plugin.getMetrics();
+		if (!metrics.isEnabled())
+			return null;
+
+		panelComponent.getChildren().add(TitleComponent.builder()
+				.text("Custom Item Hovers")
+				.build());
+
+		panelComponent.getChildren().add(LineComponent.builder()
+				.left("Timing")
+				.right("avg / p99")
+				.build());
+
+		for (HoverMetrics.Histogram h : metrics.getHistograms()) {
+			if (h.getCount() == 0)
+				continue;
+
+			panelComponent.getChildren().add(LineComponent.builder()
+					.left(h.getName())
+					.right(HoverMetrics.formatNanos(h.getMean()) + " / " + HoverMetrics.formatNanos(h.getPercentile(0.99)))
+					.build());
+		}
+
+		panelComponent.getChildren().add(LineComponent.builder()
+				.left("Cache hit rate")
+				.right(Math.round(metrics.getTooltipCacheHitRate() * 100) + "%")
+				.build());
+
+		panelComponent.getChildren().add(LineComponent.builder()
+				.left(metrics.repeatHovers.getName())
+				.right(Long.toString(metrics.repeatHovers.get()))
+				.build());
+
+		panelComponent.getChildren().add(LineComponent.builder()
+				.left(metrics.precomputedHovers.getName())
+				.right(Long.toString(metrics.precomputedHovers.get()))
+				.build());
+
+		return super.render(graphics);
+	}
+}
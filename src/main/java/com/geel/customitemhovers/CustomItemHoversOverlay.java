@@ -1,17 +1,20 @@
 package com.geel.customitemhovers;
 
 import net.runelite.api.*;
+import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.ItemContainerChanged;
+import net.runelite.api.events.MenuEntryAdded;
 import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.ui.overlay.Overlay;
 import net.runelite.client.ui.overlay.OverlayPosition;
 import net.runelite.client.ui.overlay.tooltip.Tooltip;
 import net.runelite.client.ui.overlay.tooltip.TooltipManager;
-import net.runelite.client.util.ColorUtil;
 
 import javax.inject.Inject;
 import java.awt.*;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.Set;
 
 import static net.runelite.api.MenuAction.CC_OP;
@@ -29,103 +32,195 @@ import static net.runelite.api.widgets.WidgetID.BANK_INVENTORY_GROUP_ID;
 import static net.runelite.api.widgets.WidgetID.SEED_VAULT_GROUP_ID;
 import static net.runelite.api.widgets.WidgetID.SEED_VAULT_INVENTORY_GROUP_ID;
 
+/**
+ * Shows the hovers of the item under the mouse.
+ *
+ * The hovered item is worked out from client events rather than by inspecting the menu every frame: the last menu
+ * entry added is remembered, and once per client tick (after the menu has been built) it's compared with the current
+ * target. Only when the target, or the container it's in, has changed is the item looked up again. Its hovers have
+ * usually been evaluated ahead of time (see `ContainerHoverCache`), and `render` just hands the already built tooltips
+ * to the TooltipManager.
+ *
+ * Must be registered on the EventBus.
+ */
 class CustomItemHoversOverlay extends Overlay
 {
 	private static final int BANK_ITEM_WIDGETID = WidgetInfo.BANK_ITEM_CONTAINER.getPackedId();
 	private static final int SEED_VAULT_ITEM_WIDGETID = WidgetInfo.SEED_VAULT_ITEM_CONTAINER.getPackedId();
 
 	//Widget IDs for the standard inventory container
-	private static final Set<Integer> INVENTORY_WIDGET_IDs = new HashSet<>(
-			Arrays.asList(
-					WidgetInfo.INVENTORY.getPackedId(),
-					WidgetInfo.BANK_INVENTORY_ITEMS_CONTAINER.getPackedId(),
-					WidgetInfo.EXPLORERS_RING_ALCH_INVENTORY.getPackedId(),
-					WidgetInfo.SEED_VAULT_INVENTORY_ITEMS_CONTAINER.getPackedId()
-			)
-	);
+	private static final int[] INVENTORY_WIDGET_IDs = {
+			WidgetInfo.INVENTORY.getPackedId(),
+			WidgetInfo.BANK_INVENTORY_ITEMS_CONTAINER.getPackedId(),
+			WidgetInfo.EXPLORERS_RING_ALCH_INVENTORY.getPackedId(),
+			WidgetInfo.SEED_VAULT_INVENTORY_ITEMS_CONTAINER.getPackedId()
+	};
 
 	//Widget group IDs which an item hover MenuAction will be related to
-	private static final Set<Integer> VALID_WIDGET_GROUP_IDS = new HashSet<>(
-			Arrays.asList(INVENTORY_GROUP_ID, BANK_GROUP_ID, BANK_INVENTORY_GROUP_ID,
-					SEED_VAULT_GROUP_ID, SEED_VAULT_INVENTORY_GROUP_ID)
-	);
+	private static final BitSet VALID_WIDGET_GROUP_IDS = new BitSet();
+
+	static
+	{
+		for (int groupId : new int[]{INVENTORY_GROUP_ID, BANK_GROUP_ID, BANK_INVENTORY_GROUP_ID,
+				SEED_VAULT_GROUP_ID, SEED_VAULT_INVENTORY_GROUP_ID}) {
+			VALID_WIDGET_GROUP_IDS.set(groupId);
+		}
+	}
 
 	//MenuActions which indicate an item is being hovered on
-	private static final Set<MenuAction> VALID_MENU_ACTIONS = new HashSet<>(
-			Arrays.asList(CC_OP, ITEM_USE, WIDGET_TARGET, ITEM_FIRST_OPTION, ITEM_SECOND_OPTION,
-					ITEM_THIRD_OPTION, ITEM_FOURTH_OPTION, ITEM_FIFTH_OPTION)
-	);
+	private static final Set<MenuAction> VALID_MENU_ACTIONS = EnumSet.of(CC_OP, ITEM_USE, WIDGET_TARGET,
+			ITEM_FIRST_OPTION, ITEM_SECOND_OPTION, ITEM_THIRD_OPTION, ITEM_FOURTH_OPTION, ITEM_FIFTH_OPTION);
+
+	private static final int NONE = -1;
 
 	private final Client client;
-	private final CustomItemHoversConfig config;
 	private final CustomItemHoversPlugin plugin;
 	private final TooltipManager tooltipManager;
 
+	//The last menu entry added since the previous client tick, which will be the top entry of the menu
+	private boolean menuEntryAdded = false;
+	private MenuAction addedAction;
+	private int addedParam0;
+	private int addedParam1;
+
+	//The item being hovered: its widget, its slot in that widget, and the ID of the container it's in
+	private int targetWidgetId = NONE;
+	private int targetSlot = NONE;
+	private int targetContainerId = NONE;
+	private Item targetItem = null;
+
+	//Set when the target's container changes, so the item is looked up again
+	private boolean targetContainerChanged = false;
+
+	//Tooltips built for the last array returned by `plugin.getItemHovers`, which is reused while nothing changes
+	private String[] lastHoverTexts = null;
+	private Tooltip[] lastTooltips = null;
+
 	@Inject
-	CustomItemHoversOverlay(Client client, CustomItemHoversPlugin plugin, CustomItemHoversConfig config, TooltipManager tooltipManager)
+	CustomItemHoversOverlay(Client client, CustomItemHoversPlugin plugin, TooltipManager tooltipManager)
 	{
 		setPosition(OverlayPosition.DYNAMIC);
 		this.client = client;
 		this.plugin = plugin;
-		this.config = config;
 		this.tooltipManager = tooltipManager;
 	}
 
-	@Override
-	public Dimension render(Graphics2D graphics)
+	@Subscribe
+	public void onMenuEntryAdded(MenuEntryAdded event)
 	{
-		//Don't display anything if a right-click menu is open.
-		if (client.isMenuOpen())
-			return null;
+		MenuEntry entry = event.getMenuEntry();
 
-		//Get the current menu entries; if there aren't any, return.
-		final MenuEntry[] menuEntries = client.getMenuEntries();
-		if (menuEntries.length <= 0)
-			return null;
+		menuEntryAdded = true;
+		addedAction = entry.getType();
+		addedParam0 = entry.getParam0();
+		addedParam1 = entry.getParam1();
+	}
 
-		final MenuEntry lastEntry = menuEntries[menuEntries.length - 1];
-		final MenuAction action = lastEntry.getType();
-		final int widgetId = lastEntry.getParam1();
-		final int groupId = WidgetInfo.TO_GROUP(widgetId);
+	@Subscribe
+	public void onItemContainerChanged(ItemContainerChanged event)
+	{
+		if (event.getContainerId() == targetContainerId)
+			targetContainerChanged = true;
+	}
 
-		if (!VALID_MENU_ACTIONS.contains(action))
-			return null;
+	@Subscribe
+	public void onClientTick(ClientTick tick)
+	{
+		boolean hovering = menuEntryAdded && !client.isMenuOpen();
+		menuEntryAdded = false;
 
-		if (!VALID_WIDGET_GROUP_IDS.contains(groupId))
-			return null;
+		if (!hovering || !VALID_MENU_ACTIONS.contains(addedAction)
+				|| !VALID_WIDGET_GROUP_IDS.get(WidgetInfo.TO_GROUP(addedParam1))) {
+			clearTarget();
+			return;
+		}
 
-		//We should now display a hover.
-		ItemContainer container = getContainer(widgetId);
+		//Look the item up again only if something it depends on changed
+		if (addedParam1 != targetWidgetId || addedParam0 != targetSlot || targetContainerChanged) {
+			targetWidgetId = addedParam1;
+			targetSlot = addedParam0;
+			targetContainerChanged = false;
 
-		if (container == null)
-			return null;
+			InventoryID inventoryID = getInventoryID(targetWidgetId);
+			ItemContainer container = inventoryID != null ? client.getItemContainer(inventoryID) : null;
 
-		//Get the Item from the Container
-		final int containerItemIndex = lastEntry.getParam0();
-		final Item item = container.getItem(containerItemIndex);
-		if (item == null)
-			return null;
+			targetContainerId = inventoryID != null ? inventoryID.getId() : NONE;
+			targetItem = container != null ? container.getItem(targetSlot) : null;
+		}
+
+		if (targetItem == null) {
+			lastTooltips = null;
+			return;
+		}
+
+		//Usually evaluated ahead of time; otherwise cheap while the same item is hovered. Returns the same array
+		//unless the hovers were reloaded
+		prepareTooltips(plugin.getItemHovers(targetContainerId, targetSlot, targetItem));
+	}
+
+	@Override
+	public Dimension render(Graphics2D graphics)
+	{
+		HoverMetrics metrics = plugin.getMetrics();
+		long start = metrics.start();
+
+		try {
+			//Don't display anything if a right-click menu is open.
+			if (lastTooltips == null || client.isMenuOpen())
+				return null;
+
+			for (Tooltip t : lastTooltips) {
+				tooltipManager.add(t);
+			}
 
-		//Get the hovers for this item ID
-		String[] hoverTexts = plugin.getItemHovers(item);
-		if (hoverTexts.length == 0)
 			return null;
+		} finally {
+			metrics.render.recordSince(start);
+		}
+	}
 
-		for (String s : hoverTexts) {
-			tooltipManager.add(new Tooltip(ColorUtil.prependColorTag(s, config.defaultHoverColor())));
+	/**
+	 * Builds tooltips for `hoverTexts`, unless they're the texts the current tooltips were built from.
+	 */
+	private void prepareTooltips(String[] hoverTexts)
+	{
+		if (hoverTexts.length == 0) {
+			lastHoverTexts = hoverTexts;
+			lastTooltips = null;
+			return;
 		}
 
-		return null;
+		if (hoverTexts != lastHoverTexts || lastTooltips == null) {
+			lastTooltips = new Tooltip[hoverTexts.length];
+			for (int i = 0; i < hoverTexts.length; i++) {
+				lastTooltips[i] = new Tooltip(hoverTexts[i]);
+			}
+
+			lastHoverTexts = hoverTexts;
+		}
 	}
 
-	private ItemContainer getContainer(int widgetId)
+	private void clearTarget()
 	{
-		if (INVENTORY_WIDGET_IDs.contains(widgetId))
-			return client.getItemContainer(InventoryID.INVENTORY);
-		else if (widgetId == BANK_ITEM_WIDGETID)
-			return client.getItemContainer(InventoryID.BANK);
+		targetWidgetId = NONE;
+		targetSlot = NONE;
+		targetContainerId = NONE;
+		targetItem = null;
+		targetContainerChanged = false;
+		lastTooltips = null;
+	}
+
+	private InventoryID getInventoryID(int widgetId)
+	{
+		for (int inventoryWidgetId : INVENTORY_WIDGET_IDs) {
+			if (widgetId == inventoryWidgetId)
+				return InventoryID.INVENTORY;
+		}
+
+		if (widgetId == BANK_ITEM_WIDGETID)
+			return InventoryID.BANK;
 		else if (widgetId == SEED_VAULT_ITEM_WIDGETID) {
-			return client.getItemContainer(InventoryID.SEED_VAULT);
+			return InventoryID.SEED_VAULT;
 		}
 
 		return null;
@@ -5,27 +5,39 @@ import javax.inject.Inject;
 import com.google.inject.Provides;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
+import net.runelite.api.GameState;
 import net.runelite.api.Item;
-import net.runelite.api.ItemComposition;
+import net.runelite.api.InventoryID;
+import net.runelite.api.ItemContainer;
 import net.runelite.api.ItemID;
+import net.runelite.api.events.ClientTick;
 import net.runelite.api.events.CommandExecuted;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.ItemContainerChanged;
 import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.game.ItemManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.overlay.OverlayManager;
+import net.runelite.client.util.ColorUtil;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-
-import static java.nio.file.StandardWatchEventKinds.*;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @PluginDescriptor(
@@ -37,6 +49,18 @@ import static java.nio.file.StandardWatchEventKinds.*;
 public class CustomItemHoversPlugin extends Plugin {
     private static final String PLUGIN_FOLDER_NAME = "customitemhovers";
 
+    //Folder, next to the plugin folder, which hovers shared between clients are written to; kept out of the plugin
+    //folder so that publishing them doesn't wake up hover watchers
+    private static final String SHARED_INDEX_FOLDER_NAME = "customitemhovers-cache";
+
+    //Name of the file, in the plugin folder, which the item name map is persisted to
+    private static final String ITEM_NAME_CACHE_FILE_NAME = "itemnames.cache";
+
+    //Maximum number of finished tooltip strings kept in `tooltipCache`
+    private static final int TOOLTIP_CACHE_SIZE = 4096;
+
+    private static final String[] NO_HOVERS = new String[0];
+
     @Inject
     private Client client;
 
@@ -46,60 +70,283 @@ public class CustomItemHoversPlugin extends Plugin {
     @Inject
     private OverlayManager overlayManager;
 
+    @Inject
+    private EventBus eventBus;
+
     @Inject
     private ItemManager itemManager;
 
     @Inject
     private CustomItemHoversOverlay overlay;
 
+    @Inject
+    private CustomItemHoversMetricsOverlay metricsOverlay;
+
     @Inject
     private CustomItemHoversConfig config;
 
+    @Inject
+    private ScheduledExecutorService executor;
+
+    //Loads, resolves and publishes hovers, which can take a while, so they don't hold up RuneLite's `executor`, which
+    //every plugin shares; only short tasks go there. Its thread exits when idle.
+    //The loading state (`hoverFiles`, `hoverWatcher`, `sharedIndex` and what's shared through it) is only touched by
+    //tasks on this one thread, so it's never locked, and neither the client thread nor the EDT waits for a load.
+    private final ThreadPoolExecutor hoverLoader = createHoverLoader();
+
+    //Changed whenever the plugin starts or stops, so that loads queued or running before it stopped don't publish
+    //anything afterwards. Both are only changed while holding `hoverIndex`'s monitor
+    private volatile int session;
+    private volatile boolean running;
+
+    //The session of the task running on `hoverLoader`
+    private int loaderSession;
+
     @Provides
     CustomItemHoversConfig getConfig(ConfigManager configManager) {
         return configManager.getConfig(CustomItemHoversConfig.class);
     }
 
-    //Map between an Item ID and all of its associated HoverDefs.
-    public Map<Integer, ArrayList<HoverDef>> hovers = new HashMap<>();
+    //Index between an Item ID and the templates of all of its associated HoverDefs.
+    //Built off the client thread and swapped in whole; the render path only ever reads the current value.
+    private final AtomicReference<HoverIndex> hoverIndex = new AtomicReference<>(HoverIndex.EMPTY);
+
+    //The index that `tooltipCache` and `lastHovers` were built from
+    private HoverIndex renderedIndex = null;
+
+    //`client.getItemCount()`, captured on the client thread for use by background reloads
+    private volatile int itemCount;
+
+    //Reused for every evaluation done on the render thread
+    private final HoverEvaluator evaluator = new HoverEvaluator();
+    private final HoverContext hoverContext = new HoverContext();
+
+    //Finished (colored) tooltip strings, keyed on each template's dependencies
+    private final TooltipCache tooltipCache = new TooltipCache(TOOLTIP_CACHE_SIZE);
+
+    //The last result of `getItemHovers`, and the item it was computed for
+    private String[] lastHovers = null;
+    private int lastHoversItemID;
+    private int lastHoversQuantity;
+    private int lastHoversTotalsVersion;
+    private int lastHoversContainerId;
+
+    //Cached `config.defaultHoverColor()`, which is comparatively expensive to read every frame
+    private Color hoverColor;
+
+    //Timings and counters, collected while enabled in the config
+    private final HoverMetrics metrics = new HoverMetrics();
+
+    //Every loaded hover file, and the HoverDefs each one contributes
+    private final HoverFileSet hoverFiles = new HoverFileSet(
+            defs -> HoverDefResolver.Resolve(defs, itemCount, config.lazyRegexTargets()), metrics);
+
+    private HoverFileWatcher hoverWatcher;
+
+    //Hovers published for, or by, other clients running at the same time; null if sharing is turned off
+    private SharedHoverIndex sharedIndex;
+
+    //The shared generation `hoverIndex` was loaded from or published as, or -1 if it's neither
+    private long sharedGeneration = -1;
+
+    //True if `hoverIndex` was loaded from another client's generation rather than built from `hoverFiles`. The files
+    //stay loaded meanwhile, though they may be out of date, so switching back only parses those which changed
+    private boolean usingSharedHovers = false;
+
+    //True if the item name map changed while another client's hovers were in use, so `hoverFiles` needs resolving
+    //again before an index is built from it
+    private boolean hoverFilesUnresolved = false;
+
+    //How many of each item are in the inventory, bank and seed vault. Cleared on logout and when the plugin stops;
+    //the first client tick after starting brings it up to date
+    private final ItemQuantityTable quantities = new ItemQuantityTable();
 
-    WatchService hoverWatcher;
-    WatchKey hoverWatchKey;
+    //Grand Exchange prices of items with hovers which read them, refreshed every few minutes
+    private final ItemPriceTable prices = new ItemPriceTable();
+    private ScheduledFuture<?> priceRefresh;
+
+    //Hovers of every slot in the inventory, bank and seed vault, evaluated ahead of time off the client thread
+    private ContainerHoverCache containerHovers;
+
+    //The index `containerHovers` was last refreshed for; set to null to refresh it on the next client tick
+    private HoverIndex precomputedIndex = null;
+
+    //Builds the item name map over successive client ticks, when it couldn't be loaded from disk
+    private ItemNameMap.Builder nameMapBuilder;
+    private long nameMapBuildBudgetNanos;
+
+    //Total time spent in `nameMapBuilder` so far, if metrics are enabled
+    private long nameMapBuildNanos;
 
     @Override
     protected void startUp() throws Exception {
+        hoverColor = config.defaultHoverColor();
+        metrics.setEnabled(config.showMetrics());
+        containerHovers = new ContainerHoverCache(executor, metrics, quantities, prices);
+        precomputedIndex = null;
         prepareHoverFolder();
 
+        synchronized (hoverIndex) {
+            session++;
+            running = true;
+        }
+
+        load(this::prepareSharedIndex);
+
         //Invoke this on the client thread because `itemManager.canonicalize()` must be run in the client thread
         clientThread.invokeLater(() -> {
+            itemCount = client.getItemCount();
             prepareItemNameMap();
-            prepareHoverMap();
-            prepareHoverWatcher();
+
+            //Hovers targeting item IDs work straight away; named and regex targets resolve once the name map is ready
+            load(this::prepareHoverMap);
+            load(this::prepareHoverWatcher);
         });
 
+        priceRefresh = executor.scheduleAtFixedRate(() -> clientThread.invoke(this::refreshPrices),
+                ItemPriceTable.REFRESH_INTERVAL_MINUTES, ItemPriceTable.REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+
+        eventBus.register(overlay);
         overlayManager.add(overlay);
+        overlayManager.add(metricsOverlay);
     }
 
     @Override
     protected void shutDown() throws Exception {
-        if (hoverWatcher != null)
-            hoverWatcher.close();
+        nameMapBuilder = null;
+        priceRefresh.cancel(false);
+        eventBus.unregister(overlay);
         overlayManager.remove(overlay);
+        overlayManager.remove(metricsOverlay);
+
+        //Drop loads which haven't started; one which is running finds out it's stale before publishing anything
+        hoverLoader.getQueue().clear();
+        synchronized (hoverIndex) {
+            session++;
+            running = false;
+            hoverIndex.set(HoverIndex.EMPTY);
+        }
+
+        //Queued after whatever load is running, as the watcher is only touched on `hoverLoader`
+        hoverLoader.execute(this::stopHoverWatcher);
+        containerHovers.clear();
+
+        //The counts are only used on the client thread; nothing updates them once the plugin stops
+        clientThread.invoke(quantities::clear);
     }
 
     @Subscribe
     public void onConfigChanged(ConfigChanged ev) {
-        if (ev.getGroup().equals("customitemhovers") && ev.getKey().equals("hoverEnableHotReload")) {
+        if (!ev.getGroup().equals("customitemhovers"))
+            return;
+
+        if (ev.getKey().equals("hoverEnableHotReload")) {
             if (config.hoverEnableHotReload()) {
-                clientThread.invoke(this::prepareHoverWatcher);
+                load(this::prepareHoverWatcher);
             } else {
-                clientThread.invoke(this::stopHoverWatcher);
+                load(this::stopHoverWatcher);
+            }
+        } else if (ev.getKey().equals("hoverDefaultColor")) {
+            clientThread.invoke(() -> {
+                hoverColor = config.defaultHoverColor();
+                invalidateTooltips();
+                precomputedIndex = null;
+            });
+        } else if (ev.getKey().equals("showMetrics")) {
+            metrics.setEnabled(config.showMetrics());
+        } else if (ev.getKey().equals("lazyRegexTargets")) {
+            load(this::resolveAllHovers);
+        } else if (ev.getKey().equals("shareHoverIndex")) {
+            load(() -> {
+                prepareSharedIndex();
+                prepareHoverMap();
+            });
+        }
+    }
+
+    @Subscribe
+    public void onClientTick(ClientTick tick) {
+        //Hovers were reloaded, or their color changed; evaluate every container's hovers again
+        HoverIndex index = hoverIndex.get();
+        if (index != precomputedIndex) {
+            precomputedIndex = index;
+
+            //Newly loaded hovers may read prices of items which weren't looked up yet
+            if (prices.refresh(index, itemManager))
+                invalidateTooltips();
+
+            precomputeAllHovers();
+        }
+
+        //Items whose lazily resolved regexes were just matched may have hovers reading prices; look up only theirs
+        boolean priced = false;
+        for (int itemID = index.pollLazilyPricedItem(); itemID >= 0; itemID = index.pollLazilyPricedItem()) {
+            priced |= prices.refresh(itemID, itemManager);
+        }
+
+        if (priced) {
+            invalidateTooltips();
+            precomputeAllHovers();
+        }
+
+        if (nameMapBuilder == null)
+            return;
+
+        long start = metrics.start();
+        boolean done = nameMapBuilder.step(nameMapBuildBudgetNanos);
+        nameMapBuildNanos += metrics.nameMapSlice.recordSince(start);
+
+        if (!done)
+            return;
+
+        ItemNameMap.Builder finished = nameMapBuilder;
+        nameMapBuilder = null;
+
+        if (nameMapBuildNanos > 0)
+            metrics.nameMapBuild.record(nameMapBuildNanos);
+
+        hoverLoader.execute(finished::saveCache);
+        load(this::resolveAllHovers);
+    }
+
+    @Subscribe
+    public void onGameStateChanged(GameStateChanged event) {
+        if (event.getGameState() != GameState.LOGIN_SCREEN)
+            return;
+
+        //The next account's containers are counted from scratch as they load
+        quantities.clear();
+        containerHovers.clear();
+        precomputedIndex = null;
+    }
+
+    @Subscribe
+    public void onItemContainerChanged(ItemContainerChanged event) {
+        if (!ContainerHoverCache.isSupported(event.getContainerId()))
+            return;
+
+        ItemContainer changed = event.getItemContainer();
+
+        //Hovers in the other containers may show totals which just changed too
+        if (quantities.update(changed.getId(), changed.getItems(), itemManager)) {
+            for (InventoryID id : ContainerHoverCache.CONTAINERS) {
+                ItemContainer container = id.getId() == changed.getId() ? changed : client.getItemContainer(id);
+                if (container != null)
+                    precomputeHovers(container);
             }
+        } else {
+            precomputeHovers(changed);
         }
     }
 
     @Subscribe
     public void onCommandExecuted(CommandExecuted commandExecuted) {
+        if (commandExecuted.getCommand().equals(config.metricsChatCommand())) {
+            metrics.dump();
+            hoverIndex.get().getMemoryReport().dump();
+            return;
+        }
+
         if (!commandExecuted.getCommand().equals(config.openDirChatCommand())) {
             return;
         }
@@ -118,35 +365,155 @@ public class CustomItemHoversPlugin extends Plugin {
     }
 
     /**
-     * Returns an array of hover texts that should be rendered for a given item
+     * Returns the hover texts for an item in a slot of one of `ContainerHoverCache.CONTAINERS`. If they were
+     * evaluated ahead of time, this is just a lookup; otherwise it's the same as `getItemHovers(item)`.
+     *
+     * The returned array is shared and must not be modified.
+     */
+    public String[] getItemHovers(int containerId, int slot, Item item) {
+        String[] hovers = containerHovers.get(containerId, slot, item, hoverIndex.get(), hoverColor);
+
+        if (hovers != null) {
+            metrics.precomputedHovers.increment();
+            return hovers;
+        }
+
+        return getItemHovers(containerId, item);
+    }
+
+    /**
+     * Returns an array of hover texts, already colored, that should be rendered for a given item.
+     *
+     * The returned array is shared and must not be modified. As long as the same item and stack size keep being
+     * hovered, the same array is returned.
      *
      * @param item
      * @return
      */
     public String[] getItemHovers(Item item) {
-        //Do a hot-reload if we should
-        if (config.hoverEnableHotReload() && hoverWatcherTriggered()) {
-            prepareHoverMap();
+        return getItemHovers(-1, item);
+    }
+
+    /**
+     * @param containerId The container the item is in, for `when` clauses which read it; -1 if it isn't in one
+     */
+    private String[] getItemHovers(int containerId, Item item) {
+        //Hovers were reloaded; anything cached refers to the old ones
+        HoverIndex index = hoverIndex.get();
+        if (index != renderedIndex) {
+            invalidateTooltips();
+            renderedIndex = index;
         }
 
-        int itemID = itemManager.canonicalize(item.getId());
-        ItemComposition comp = itemManager.getItemComposition(itemID);
+        int itemID = ItemNameMap.Canonicalize(itemManager, item.getId());
+
+        //If item's ID is not in `hoverIndex`, it has no hovers.
+        HoverTemplate[] templates = index.get(itemID);
+        if (templates == null)
+            return NO_HOVERS;
 
-        //If item's ID is not in `hovers`, it has no hovers.
-        if (!hovers.containsKey(itemID))
-            return new String[0];
+        //Nothing a hover depends on can have changed since the last call
+        int totalsVersion = quantities.getVersion(itemID);
+        if (lastHovers != null && item.getId() == lastHoversItemID && item.getQuantity() == lastHoversQuantity
+                && totalsVersion == lastHoversTotalsVersion && containerId == lastHoversContainerId) {
+            metrics.repeatHovers.increment();
+            return lastHovers;
+        }
 
-        //For each hover associated with this item, add its transformed text to the resultant array
-        ArrayList<String> ret = new ArrayList<>();
-        for (HoverDef d : hovers.get(itemID)) {
-            ret.addAll(Arrays.asList(d.GetTransformedTexts(item, comp)));
+        //Read from the item name map's tables once it's ready, so usually without touching `itemManager`
+        int price = ItemNameMap.GetPrice(itemManager, itemID);
+        int highAlch = ItemNameMap.GetHighAlch(itemManager, itemID);
+        hoverContext.set(item.getId(), item.getQuantity(), price, highAlch).setGePrice(prices.get(itemID))
+                .setTotals(quantities, itemID).setContainer(containerId);
+
+        //For each hover associated with this item whose condition holds, add its transformed text to the resultant
+        //array. Conditions are checked first, so hovers which aren't shown aren't looked up or evaluated
+        String[] ret = new String[templates.length];
+        int count = 0;
+        for (HoverTemplate t : templates) {
+            if (t.test(hoverContext))
+                ret[count++] = getTooltipText(t);
         }
 
-        //Turn `ret` into an array from an ArrayList
-        String[] retArr = new String[ret.size()];
-        retArr = ret.toArray(retArr);
+        if (count < ret.length)
+            ret = count == 0 ? NO_HOVERS : Arrays.copyOf(ret, count);
+
+        lastHovers = ret;
+        lastHoversItemID = item.getId();
+        lastHoversQuantity = item.getQuantity();
+        lastHoversTotalsVersion = totalsVersion;
+        lastHoversContainerId = containerId;
 
-        return retArr;
+        return ret;
+    }
+
+    /**
+     * Returns the colored text of a template for the item in `hoverContext`, from `tooltipCache` if possible.
+     */
+    private String getTooltipText(HoverTemplate t) {
+        long key = t.cacheKey(hoverContext);
+        int stamp = t.cacheStamp(hoverContext);
+        String text = tooltipCache.get(t.getID(), key, stamp);
+
+        if (text == null) {
+            metrics.tooltipCacheMisses.increment();
+
+            long start = metrics.start();
+            text = ColorUtil.prependColorTag(evaluator.Evaluate(t, hoverContext), hoverColor);
+            metrics.evaluate.recordSince(start);
+
+            tooltipCache.put(t.getID(), key, stamp, text);
+        } else {
+            metrics.tooltipCacheHits.increment();
+        }
+
+        return text;
+    }
+
+    /**
+     * Drops all cached tooltip text, eg. because hovers were reloaded or the default color changed.
+     */
+    private void invalidateTooltips() {
+        tooltipCache.clear();
+        lastHovers = null;
+    }
+
+    /**
+     * Looks up prices again, and drops any hovers built from the old ones.
+     * <p>
+     * Must be called on the client thread.
+     */
+    private void refreshPrices() {
+        if (prices.refresh(hoverIndex.get(), itemManager)) {
+            invalidateTooltips();
+            precomputedIndex = null;
+        }
+    }
+
+    /**
+     * Queues evaluation of the hovers of every slot in the inventory, bank and seed vault whose hovers aren't current.
+     * <p>
+     * Must be called on the client thread.
+     */
+    private void precomputeAllHovers() {
+        for (InventoryID id : ContainerHoverCache.CONTAINERS) {
+            ItemContainer container = client.getItemContainer(id);
+            if (container == null)
+                continue;
+
+            //Counts containers which haven't changed since the plugin started, too
+            quantities.update(container.getId(), container.getItems(), itemManager);
+            precomputeHovers(container);
+        }
+    }
+
+    /**
+     * Queues evaluation of the hovers of every changed slot in `container`.
+     * <p>
+     * Must be called on the client thread.
+     */
+    private void precomputeHovers(ItemContainer container) {
+        containerHovers.update(container.getId(), container.getItems(), hoverIndex.get(), hoverColor, itemManager);
     }
 
     /**
@@ -159,10 +526,28 @@ public class CustomItemHoversPlugin extends Plugin {
     }
 
     /**
-     * Prepare ItemNameMap
+     * @return Whether the item name map, needed to resolve named and regex targets, is ready
+     */
+    public ItemNameMap.State getItemNameMapState() {
+        return ItemNameMap.GetState();
+    }
+
+    public HoverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Prepare ItemNameMap: load it from disk if possible, or else start building it over successive client ticks.
+     * <p>
+     * Must be called on the client thread.
      */
     protected void prepareItemNameMap() {
-        ItemNameMap.PrepareMap(client, itemManager);
+        nameMapBuildBudgetNanos = config.nameMapBuildBudget() * 1_000_000L;
+        nameMapBuildNanos = 0;
+
+        long start = metrics.start();
+        nameMapBuilder = ItemNameMap.StartBuild(client, itemManager, getHoverPath().resolve(ITEM_NAME_CACHE_FILE_NAME));
+        metrics.nameMapStart.recordSince(start);
     }
 
     /**
@@ -193,45 +578,196 @@ public class CustomItemHoversPlugin extends Plugin {
 
     /**
      * Reads all files from the `customitemhovers` directory, parses them, and
-     * prepares a map of (itemID, hovers) for each item that has a hover.
+     * prepares an index of (itemID, hovers) for each item that has a hover.
+     * <p>
+     * Files which haven't changed since they were last loaded are skipped.
+     * <p>
+     * Runs on `hoverLoader`, off the client thread. The new index is only published once it's complete; if anything
+     * goes wrong, the previous index stays in place.
      */
     protected void prepareHoverMap() {
-        hovers.clear();
+        reloadHoverFiles(null);
+    }
 
-        //Read all hover files
-        ArrayList<HoverFile> hoverFiles = HoverFileParser.readHoverFiles(getHoverPath());
+    /**
+     * Resolves every loaded HoverDef's targets again, and publishes the resulting index. Used once the item name map
+     * becomes ready.
+     */
+    private void resolveAllHovers() {
+        //Hovers loaded from another client are kept if they were resolved against the same item catalog
+        if (usingSharedHovers) {
+            hoverFilesUnresolved = true;
+            reloadHoverFiles(null);
+            return;
+        }
 
-        for (HoverFile f : hoverFiles) {
-            for (HoverDef d : f.Hovers) {
-                //Compute which item IDs this HoverDef is attached to. This fills in `d.ItemIDs`.
-                parseHoverDefNames(d);
+        try {
+            hoverFiles.resolveAll();
+            if (!publishIndex(hoverFiles.buildIndex(itemCount)))
+                return;
+            sharedGeneration = -1;
+        } catch (Exception e) {
+            log.error("[CUSTOMITEMHOVERS] Failed to resolve hovers; keeping previously loaded hovers", e);
+            return;
+        }
 
-                //Add this HoverDef to the map for every Item ID it represents
-                for (int itemID : d.ItemIDs) {
-                    if (!hovers.containsKey(itemID))
-                        hovers.put(itemID, new ArrayList<>());
+        if (sharedIndex == null)
+            return;
+
+        //If another client is publishing, it publishes these same hovers
+        try (SharedHoverIndex.Lock lock = sharedIndex.tryLock()) {
+            if (lock != null)
+                publishHovers(lock, SharedHoverIndex.SourcesDigest(getHoverPath()));
+        } catch (IOException e) {
+            log.warn("[CUSTOMITEMHOVERS] Couldn't share hovers with other clients: {}", e.toString());
+        }
+    }
 
-                    ArrayList<HoverDef> curArr = hovers.get(itemID);
-                    curArr.add(d);
+    /**
+     * Re-parses only the given hover files, then rebuilds and publishes the index if any of them changed.
+     * <p>
+     * If hovers are shared between clients, and another client has already published hovers built from the same files,
+     * those are used instead. Otherwise, this client loads them and publishes the result, holding the shared index's
+     * lock meanwhile. If another client holds the lock, this one never waits for it: it loads the files itself, and
+     * leaves publishing to the other.
+     *
+     * @param changed Absolute paths of the changed files, or null to rescan the whole directory
+     */
+    private void reloadHoverFiles(Set<Path> changed) {
+        if (sharedIndex != null) {
+            try {
+                long sources = SharedHoverIndex.SourcesDigest(getHoverPath());
+                if (useSharedHovers(sharedIndex.read(), sources, null))
+                    return;
+
+                try (SharedHoverIndex.Lock lock = sharedIndex.tryLock()) {
+                    if (lock != null) {
+                        if (useSharedHovers(lock.read(), sources, lock))
+                            return;
+
+                        if (loadHoverFiles(changed))
+                            publishHovers(lock, sources);
+                        return;
+                    }
                 }
+
+                log.debug("[CUSTOMITEMHOVERS] Another client is publishing hovers; loading them here too");
+            } catch (IOException e) {
+                log.warn("[CUSTOMITEMHOVERS] Couldn't share hovers with other clients: {}", e.toString());
             }
         }
+
+        loadHoverFiles(changed);
     }
 
     /**
-     * @return True if the `customitemhovers` directory has changed since the last time this function was called
+     * Loads the given hover files into `hoverFiles`, and rebuilds the index if any of them changed.
+     *
+     * @param changed Absolute paths of the changed files, or null to rescan the whole directory
+     * @return False if loading failed, and the previously loaded hovers were kept
      */
-    private boolean hoverWatcherTriggered() {
-        if (hoverWatchKey == null || !hoverWatchKey.isValid())
+    private boolean loadHoverFiles(Set<Path> changed) {
+        //Files may have changed while another client's hovers were in use, without being loaded here; rescan them all,
+        //which only parses the ones whose size or modification time changed
+        boolean replaceShared = usingSharedHovers;
+        if (replaceShared)
+            changed = null;
+
+        try {
+            boolean rebuild = changed == null
+                    ? hoverFiles.loadAll(getHoverPath()) || replaceShared || hoverIndex.get() == HoverIndex.EMPTY
+                    : hoverFiles.update(changed);
+
+            if (replaceShared && hoverFilesUnresolved) {
+                hoverFiles.resolveAll();
+                hoverFilesUnresolved = false;
+            }
+
+            if (rebuild) {
+                if (!publishIndex(hoverFiles.buildIndex(itemCount)))
+                    return false;
+                sharedGeneration = -1;
+                usingSharedHovers = false;
+            }
+
+            return true;
+        } catch (Exception e) {
+            log.error("[CUSTOMITEMHOVERS] Failed to load hovers; keeping previously loaded hovers", e);
             return false;
+        }
+    }
 
-        //If we've received any filesystem events, then assume it changed
-        boolean triggered = hoverWatchKey.pollEvents().size() > 0;
+    /**
+     * Switches to the hovers of a generation published by another client, if it was built from the current hover files.
+     * Its defs are decoded into this client's heap and indexed here; only parsing and resolving them is saved.
+     *
+     * @param lock The shared index's lock, if it's held
+     * @return True if that generation's hovers are in use
+     */
+    private boolean useSharedHovers(SharedHoverIndex.Stamp stamp, long sources, SharedHoverIndex.Lock lock)
+            throws IOException {
+        if (stamp == null || !stamp.matches(sources))
+            return false;
+
+        if (stamp.generation == sharedGeneration)
+            return true;
+
+        long start = System.nanoTime();
+        HoverDef[] defs = lock != null ? lock.load(stamp) : sharedIndex.load(stamp);
+        if (defs == null)
+            return false;
+
+        //Share identical templates, as loading hover files does
+        HoverInterner interner = new HoverInterner();
+        HoverIndex.Builder builder = new HoverIndex.Builder();
+        for (HoverDef d : defs) {
+            interner.intern(d);
+            builder.add(d);
+        }
+
+        if (!publishIndex(builder.build(itemCount)))
+            return true;
+        sharedGeneration = stamp.generation;
+        usingSharedHovers = true;
 
-        //Enable more events to be queued
-        hoverWatchKey.reset();
+        log.info("[CUSTOMITEMHOVERS] Loaded {} hovers shared by another client in {}ms", defs.length,
+                (System.nanoTime() - start) / 1_000_000);
 
-        return triggered;
+        return true;
+    }
+
+    /**
+     * Publishes the loaded hovers for other clients, if they're fully resolved.
+     *
+     * @param sources Digest of the hover files they were loaded from; see `SharedHoverIndex.SourcesDigest`
+     */
+    private void publishHovers(SharedHoverIndex.Lock lock, long sources) throws IOException {
+        //Hovers with unresolved names or regexes would be missing targets for other clients. A stopped plugin's hovers
+        //may be out of date by the time it starts again
+        if (config.lazyRegexTargets() || !ItemNameMap.IsReady() || !isCurrent())
+            return;
+
+        sharedGeneration = lock.publish(hoverFiles.getDefs(), sources, ItemNameMap.GetFingerprint());
+    }
+
+    /**
+     * Creates `sharedIndex` if hovers are to be shared between clients, or drops it if not.
+     */
+    private void prepareSharedIndex() {
+        sharedIndex = null;
+        sharedGeneration = -1;
+
+        if (!config.shareHoverIndex())
+            return;
+
+        Path sharedPath = RuneLite.RUNELITE_DIR.toPath().resolve(SHARED_INDEX_FOLDER_NAME);
+
+        try {
+            Files.createDirectories(sharedPath);
+            sharedIndex = new SharedHoverIndex(sharedPath);
+        } catch (IOException e) {
+            log.warn("[CUSTOMITEMHOVERS] Couldn't create {}; not sharing hovers: {}", sharedPath, e.toString());
+        }
     }
 
     /**
@@ -240,7 +776,7 @@ public class CustomItemHoversPlugin extends Plugin {
      * This enables hot-reloading.
      */
     private void prepareHoverWatcher() {
-        if (!config.hoverEnableHotReload())
+        if (!config.hoverEnableHotReload() || hoverWatcher != null)
             return;
 
         Path hoverPath = getHoverPath();
@@ -250,75 +786,71 @@ public class CustomItemHoversPlugin extends Plugin {
             return;
 
         try {
-            hoverWatcher = FileSystems.getDefault().newWatchService();
-
-            hoverWatchKey = hoverPath.register(hoverWatcher,
-                    ENTRY_CREATE,
-                    ENTRY_DELETE,
-                    ENTRY_MODIFY);
+            hoverWatcher = new HoverFileWatcher(hoverPath, changed -> load(() -> reloadHoverFiles(changed)));
+            hoverWatcher.start();
         } catch (Exception e) {
-
+            log.error("[CUSTOMITEMHOVERS]: exception starting hover watcher", e);
+            hoverWatcher = null;
         }
     }
 
     /**
-     * Closes `hoverWatcher` and `hoverWatchKey`, if possible.
+     * Stops `hoverWatcher`, if it's running.
      */
     private void stopHoverWatcher() {
         if (hoverWatcher != null) {
-            try {
-                hoverWatcher.close();
-            } catch (IOException e) {
-                log.error("[CUSTOMITEMHOVERS]: exception closing hover watcher", e);
-            }
-
+            hoverWatcher.stop();
             hoverWatcher = null;
         }
+    }
 
-        if (hoverWatchKey != null) {
-            hoverWatchKey.cancel();
-            hoverWatchKey = null;
-        }
+    /**
+     * Queues a task on `hoverLoader`. It's skipped if the plugin has stopped, or stopped and started again, by the time
+     * it runs.
+     */
+    private void load(Runnable task) {
+        int taskSession = session;
+
+        hoverLoader.execute(() -> {
+            if (taskSession != session || !running)
+                return;
+
+            loaderSession = taskSession;
+            task.run();
+        });
     }
 
     /**
-     * Computes all item IDs that a HoverDef is targeting, and stores the results in
-     * its `ItemIDs` member variable.
-     *
-     * @param d HoverDef to parse names for
+     * @return False if the plugin has stopped since the running `hoverLoader` task was queued
      */
-    private void parseHoverDefNames(HoverDef d) {
-        Set<Integer> itemIDs = new HashSet<>();
+    private boolean isCurrent() {
+        return loaderSession == session && running;
+    }
 
-        //If ItemNamesRegex is non-empty, insert all item IDs whose name matches any of the given regexes
-        if (d.ItemNamesRegex != null) {
-            for (String name : d.ItemNamesRegex) {
-                itemIDs.addAll(ItemNameMap.GetItemIDsRegex(name));
-            }
-        }
+    /**
+     * Makes `index` the one hovers are shown from, unless the plugin has stopped since the running `hoverLoader` task
+     * was queued.
+     *
+     * @return False if it wasn't published
+     */
+    private boolean publishIndex(HoverIndex index) {
+        synchronized (hoverIndex) {
+            if (!isCurrent())
+                return false;
 
-        //If ItemNames is non-empty, insert all item IDs with the exact name(s) specified
-        if (d.ItemNames != null) {
-            for (String name : d.ItemNames) {
-                for (int id : ItemNameMap.GetItemIDs(name)) {
-                    itemIDs.add(id);
-                }
-            }
+            hoverIndex.set(index);
+            return true;
         }
+    }
 
-        //If ItemIDs has any IDs specified, copy them in
-        if (d.ItemIDs != null && d.ItemIDs.length > 0) {
-            for (int id : d.ItemIDs) {
-                itemIDs.add(id);
-            }
-        }
+    private static ThreadPoolExecutor createHoverLoader() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "customitemhovers-reload");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
 
-        //Convert `itemIDs` into an array and store it in `d.ItemIDs`
-        d.ItemIDs = new int[itemIDs.size()];
-        int i = 0;
-        for (Iterator<Integer> it = itemIDs.iterator(); it.hasNext(); ) {
-            int id = it.next();
-            d.ItemIDs[i++] = id;
-        }
+        return pool;
     }
 }
@@ -0,0 +1,251 @@
+package com.geel.customitemhovers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled, binary form of one or more hover files, which loads without any json parsing, template compiling or
+ * (usually) name resolving. Produced from json hover files by `HoverBundleCompiler`.
+ *
+ * Every string (hover text, literal text, item name, regex, variable name) is stored once, in a string table, and
+ * referred to by index. Each def carries its templates already compiled into segments, and the item IDs its targets
+ * resolved to when the bundle was compiled, sorted ascending.
+ *
+ * The resolved IDs are only trusted while the game's item catalog matches the one the bundle was compiled against
+ * (see `HoverDefResolver`); the def's original targets are kept too, so it can be resolved again if the catalog has
+ * changed.
+ *
+ * Format (big-endian):
+ * <pre>
+ *   int   MAGIC
+ *   int   VERSION
+ *   long  fingerprint of the item catalog IDs were resolved against, or 0 if they weren't resolved
+ *   int   number of strings
+ *   per string:
+ *     int    length of UTF-8 string
+ *     byte[] UTF-8 string
+ *   int   number of defs
+ *   per def:
+ *     int    number of explicit `ids`, then each ID
+ *     int    number of `items`, then each one's string index
+ *     int    number of `items_regex`, then each one's string index
+ *     int    number of templates, then each template (see `HoverTemplate.write`)
+ *     int    number of resolved IDs, then each ID
+ * </pre>
+ */
+public class HoverBundle {
+    public static final String EXTENSION = ".hoverbundle";
+
+    private static final int MAGIC = 0x43494842; //"CIHB"
+    private static final int VERSION = 3;
+
+    /**
+     * Loads a bundle. The whole file is read into the heap and decoded straight away, since every string and array in
+     * it is copied out anyway; the file isn't kept open, so it can be replaced or deleted while hovers are loaded.
+     *
+     * @param digest If non-null, updated with the bundle's contents
+     * @return The bundle's defs as a HoverFile, with `Templates` and `ItemIDs` filled in
+     * @throws IOException If the file can't be read, or isn't a valid bundle
+     */
+    public static HoverFile Load(Path bundleFile, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Hover bundle too large");
+
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0)
+                    throw new IOException("Hover bundle was truncated while being read");
+            }
+            buf.flip();
+
+            if (digest != null)
+                digest.update(buf.duplicate());
+
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+                throw new IOException("Not a hover bundle");
+
+            int version = buf.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported hover bundle version " + version);
+
+            long fingerprint = buf.getLong();
+
+            String[] strings = new String[readCount(buf, 4)];
+            byte[] stringBytes = new byte[256];
+
+            for (int i = 0; i < strings.length; i++) {
+                int length = buf.getInt();
+                if (stringBytes.length < length)
+                    stringBytes = new byte[length];
+
+                buf.get(stringBytes, 0, length);
+                strings[i] = new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            HoverFile f = new HoverFile();
+            f.IsHoverMap = "absolutely";
+            f.Hovers = new HoverDef[readCount(buf, 20)];
+
+            for (int i = 0; i < f.Hovers.length; i++) {
+                HoverDef d = new HoverDef();
+
+                d.ExplicitItemIDs = readInts(buf);
+                d.ItemNames = readStrings(buf, strings);
+                d.ItemNamesRegex = readStrings(buf, strings);
+
+                d.Templates = new HoverTemplate[readCount(buf, 12)];
+                d.ParsedHoverTexts = new String[d.Templates.length];
+                for (int t = 0; t < d.Templates.length; t++) {
+                    d.Templates[t] = HoverTemplate.read(buf, strings);
+                    d.ParsedHoverTexts[t] = d.Templates[t].getSource();
+                }
+
+                d.ItemIDs = readInts(buf);
+                d.ResolvedFingerprint = fingerprint;
+
+                f.Hovers[i] = d;
+            }
+
+            return f;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt hover bundle: " + e, e);
+        }
+    }
+
+    /**
+     * Writes `defs`, which must have been compiled and resolved, to a bundle. The file is replaced atomically.
+     *
+     * @param fingerprint Fingerprint of the item catalog the defs were resolved against, or 0 if only their explicit
+     *                    IDs were resolved
+     */
+    public static void Write(Path bundleFile, List<HoverDef> defs, long fingerprint) throws IOException {
+        //Strings are collected while the defs are written, so the defs go to a buffer first
+        Map<String, Integer> stringIndices = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+
+        ByteArrayOutputStream defBytes = new ByteArrayOutputStream();
+        DataOutputStream defOut = new DataOutputStream(defBytes);
+
+        defOut.writeInt(defs.size());
+        for (HoverDef d : defs) {
+            writeInts(defOut, d.ExplicitItemIDs != null ? d.ExplicitItemIDs : d.ItemIDs);
+            writeStrings(defOut, d.ItemNames, stringIndices, strings);
+            writeStrings(defOut, d.ItemNamesRegex, stringIndices, strings);
+
+            defOut.writeInt(d.Templates.length);
+            for (HoverTemplate t : d.Templates) {
+                t.write(defOut, s -> stringIndex(s, stringIndices, strings));
+            }
+
+            writeInts(defOut, d.ItemIDs);
+        }
+        defOut.flush();
+
+        Path tmp = bundleFile.resolveSibling(bundleFile.getFileName() + ".tmp");
+
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            defBytes.writeTo(out);
+        }
+
+        Files.move(tmp, bundleFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int stringIndex(String s, Map<String, Integer> stringIndices, List<String> strings) {
+        Integer index = stringIndices.get(s);
+
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndices.put(s, index);
+        }
+
+        return index;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values, Map<String, Integer> stringIndices,
+                                     List<String> strings) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(values.length);
+        for (String v : values) {
+            out.writeInt(stringIndex(v, stringIndices, strings));
+        }
+    }
+
+    /**
+     * Reads the number of elements which follow, checking it against how many bytes are left.
+     *
+     * @param minElementSize The smallest number of bytes each element can take up
+     */
+    private static int readCount(ByteBuffer buf, int minElementSize) {
+        int count = buf.getInt();
+
+        if (count < 0 || (long) count * minElementSize > buf.remaining())
+            throw new IllegalArgumentException("bad element count " + count);
+
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer buf) {
+        int[] ret = new int[readCount(buf, 4)];
+        buf.asIntBuffer().get(ret);
+        buf.position(buf.position() + ret.length * 4);
+
+        return ret;
+    }
+
+    private static String[] readStrings(ByteBuffer buf, String[] strings) {
+        String[] ret = new String[readCount(buf, 4)];
+
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = strings[buf.getInt()];
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,95 @@
+package com.geel.customitemhovers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command line entry point which compiles a directory of json hover files into a single hover bundle.
+ *
+ * Usage: {@code HoverBundleCompiler <hover dir> <output bundle> [item name cache]}
+ *
+ * If an item name cache (the `itemnames.cache` file from a client's `customitemhovers` folder) is given, `items` and
+ * `items_regex` are resolved at compile time, and the client only resolves them again if its item catalog differs.
+ * Otherwise only `ids` are resolved, and names are resolved by the client when the bundle is loaded.
+ *
+ * Also available as the `compileHoverBundle` Gradle task.
+ */
+public class HoverBundleCompiler {
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: HoverBundleCompiler <hover dir> <output bundle> [item name cache]");
+            System.exit(2);
+        }
+
+        try {
+            System.exit(compile(Paths.get(args[0]), Paths.get(args[1]), args.length > 2 ? Paths.get(args[2]) : null));
+        } catch (IOException e) {
+            System.err.println("Couldn't compile hover bundle: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return The process exit code; non-zero if any hover file couldn't be parsed
+     */
+    private static int compile(Path hoverDir, Path bundleFile, Path nameCacheFile) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> fileStream = Files.list(hoverDir)) {
+            paths = fileStream
+                    .filter(p -> HoverFileParser.isJsonFile(p) && HoverFileParser.isHoverFileCandidate(p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<HoverDef> defs = new ArrayList<>();
+        boolean failed = false;
+
+        for (HoverFileParser.ParseResult r : HoverFileParser.parseHoverFiles(paths)) {
+            if (r.error != null) {
+                System.err.println(r.path.getFileName() + ": " + r.error);
+                failed = true;
+                continue;
+            }
+
+            if (r.file == null) {
+                System.out.println("Skipping " + r.path.getFileName() + ": not a hover file");
+                continue;
+            }
+
+            defs.addAll(Arrays.asList(r.file.Hovers));
+        }
+
+        if (failed)
+            return 1;
+
+        long fingerprint = 0;
+        if (nameCacheFile != null) {
+            if (!ItemNameMap.PrepareMapFromCache(nameCacheFile)) {
+                System.err.println("Couldn't read item name cache " + nameCacheFile);
+                return 1;
+            }
+
+            fingerprint = ItemNameMap.GetFingerprint();
+        }
+
+        HoverDefResolver.Resolve(defs);
+
+        Path bundleDir = bundleFile.toAbsolutePath().getParent();
+        if (bundleDir != null)
+            Files.createDirectories(bundleDir);
+
+        HoverBundle.Write(bundleFile, defs, fingerprint);
+
+        System.out.println("Wrote " + defs.size() + " hovers from " + paths.size() + " files to " + bundleFile
+                + (fingerprint == 0 ? " (item names unresolved)" : ""));
+
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.geel.customitemhovers;
+
+/**
+ * The values a hover template can read while it's being evaluated for a specific item.
+ *
+ * Instances are meant to be reused between evaluations, so filling one in doesn't allocate.
+ */
+public class HoverContext {
+    //Raw (non-canonicalized) ID of the item
+    int itemID;
+
+    //Number of items in the stack
+    int quantity;
+
+    //Clientside value of the item
+    int price;
+
+    //High-alch value of the item
+    int highAlch;
+
+    //Grand Exchange price of the item; see `ItemPriceTable`
+    int gePrice;
+
+    //How many of the item are in the inventory, bank and seed vault, and the version of those counts; see
+    //`ItemQuantityTable`
+    int inventoryQuantity;
+    int bankQuantity;
+    int vaultQuantity;
+    int totalsVersion;
+
+    //ID of the container the item is in, or -1 if it isn't in one hovers know about; only read by `when` clauses
+    int containerId = -1;
+
+    HoverContext setGePrice(int gePrice) {
+        this.gePrice = gePrice;
+
+        return this;
+    }
+
+    /**
+     * Fills in the item's quantity totals.
+     */
+    HoverContext setTotals(ItemQuantityTable quantities, int canonicalID) {
+        return setTotals(quantities.getInventory(canonicalID), quantities.getBank(canonicalID),
+                quantities.getSeedVault(canonicalID), quantities.getVersion(canonicalID));
+    }
+
+    /**
+     * Fills in quantity totals captured earlier, eg on another thread.
+     */
+    HoverContext setTotals(int inventoryQuantity, int bankQuantity, int vaultQuantity, int totalsVersion) {
+        this.inventoryQuantity = inventoryQuantity;
+        this.bankQuantity = bankQuantity;
+        this.vaultQuantity = vaultQuantity;
+        this.totalsVersion = totalsVersion;
+
+        return this;
+    }
+
+    HoverContext setContainer(int containerId) {
+        this.containerId = containerId;
+
+        return this;
+    }
+
+    /**
+     * Fills this context in from values captured earlier, eg on another thread.
+     */
+    HoverContext set(int itemID, int quantity, int price, int highAlch) {
+        this.itemID = itemID;
+        this.quantity = quantity;
+        this.price = price;
+        this.highAlch = highAlch;
+
+        return this;
+    }
+}
@@ -1,8 +1,6 @@
 package com.geel.customitemhovers;
 
 import com.google.gson.annotations.SerializedName;
-import net.runelite.api.Item;
-import net.runelite.api.ItemComposition;
 
 /**
  * A parsed entry in a hoverfile.
@@ -11,36 +9,85 @@ public class HoverDef {
     @SerializedName("ids")
     public int[] ItemIDs;
 
+    /**
+     * The `ids` given in the hoverfile, before `ItemIDs` was overwritten with every resolved ID.
+     *
+     * Kept so the def can be resolved again, eg. once the item name map becomes ready.
+     */
+    public transient int[] ExplicitItemIDs;
+
+    /**
+     * For defs loaded from a hover bundle, the fingerprint of the item catalog `ItemIDs` was resolved against when the
+     * bundle was compiled (see `ItemNameMapCache.Fingerprint`). 0 if `ItemIDs` still needs to be resolved.
+     */
+    public transient long ResolvedFingerprint;
+
+    /**
+     * Name of the hoverfile (or bundle) the def was loaded from, and its position in the file's `hovers`; for messages.
+     */
+    public transient String SourceFile;
+    public transient int SourceIndex;
+
     @SerializedName("items")
     public String[] ItemNames;
 
     @SerializedName("items_regex")
     public String[] ItemNamesRegex;
 
+    /**
+     * True if `ItemNamesRegex` wasn't resolved into `ItemIDs`, and is matched against an item's name the first time it's
+     * hovered instead; see `LazyRegexTargets`.
+     */
+    public transient boolean LazyRegex;
+
+    /**
+     * Condition under which every one of the def's hover boxes is shown, eg. `QTY >= 10`; see
+     * `HoverExpression.ParseCondition`. Null if they're always shown.
+     *
+     * Only set while the hoverfile is being parsed; it's then part of each of `Templates`' conditions.
+     */
+    @SerializedName("when")
+    public String When;
+
+    //Only set while the hoverfile is being parsed; see `ParsedHoverTexts`
     @SerializedName("hovers")
-    public String[][] HoverTexts;
+    public Box[] HoverTexts;
 
     /**
      * An array of Hovers; each element in this array corresponds to an individual hover box that should be rendered.
      *
-     * This is produced from `HoverTexts`, which is a 2D array of strings.
-     * Each sub-array of strings in `HoverTexts` is treated as an array of lines which are concatenated together.
+     * This is produced from `HoverTexts`, whose boxes each hold an array of lines (see `Box`).
+     * Each box's lines are concatenated together.
+     *
+     * May be shared with other defs with identical hovers (see `HoverInterner`), so must not be modified.
      */
     public String[] ParsedHoverTexts;
 
     /**
-     * Creates and returns an array of hover text strings, after transformation for a specific item.
-     *
-     * Transformation involves replacing function calls with their results, and variables with their values.
+     * `ParsedHoverTexts`, compiled into templates when the hoverfile is loaded. Shared like `ParsedHoverTexts`.
      */
-    public String[] GetTransformedTexts(Item item, ItemComposition composition) {
-        String[] transformed = new String[ParsedHoverTexts.length];
+    public transient HoverTemplate[] Templates;
 
-        int i = 0;
-        for(String text : ParsedHoverTexts) {
-            transformed[i++] = HoverEvaluator.Evaluate(text, item, composition);
+    /**
+     * A single entry of `hovers` in a hoverfile: either an array of lines, or an object with the lines in `text` and an
+     * optional `when` clause, eg. `{"when": "IN_BANK", "text": ["..."]}`. See `HoverFileParser`.
+     */
+    public static class Box {
+        //Condition under which this box is shown, or null if it's always shown
+        public String When;
+
+        public String[] Lines;
+
+        public Box(String when, String[] lines) {
+            When = when;
+            Lines = lines;
         }
+    }
 
-        return transformed;
+    /**
+     * Describes where the def came from, eg. `potions.json, hover #3`.
+     */
+    public String GetSourceDescription() {
+        return (SourceFile != null ? SourceFile : "unknown file") + ", hover #" + SourceIndex;
     }
 }
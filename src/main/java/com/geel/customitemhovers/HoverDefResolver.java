@@ -0,0 +1,94 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Resolves the targets (`ids`, `items` and `items_regex`) of HoverDefs into the item IDs they apply to.
+ */
+@Slf4j
+public class HoverDefResolver {
+    /**
+     * Computes all item IDs that each HoverDef is targeting, and stores the results in
+     * its `ItemIDs` member variable.
+     * <p>
+     * All regexes are resolved together, in one pass over the item names.
+     * <p>
+     * Defs loaded from a hover bundle already carry their resolved IDs; those are kept as they are, unless the item
+     * name map is ready and was built from a different item catalog than the bundle was compiled against.
+     *
+     * @param defs HoverDefs to parse names for
+     */
+    public static void Resolve(List<HoverDef> defs) {
+        Resolve(defs, 0, false);
+    }
+
+    /**
+     * @param itemCount Number of items in the game. IDs given in a hoverfile at or past it (eg. a typo) are logged
+     *                  and dropped, as the hover index only covers IDs below it. 0 if it isn't known.
+     * @param lazyRegex If true, regexes aren't matched against every item name now; they're left for the hover index
+     *                  to match one item at a time, as items are hovered (see `LazyRegexTargets`)
+     * @see #Resolve(List)
+     */
+    public static void Resolve(List<HoverDef> defs, int itemCount, boolean lazyRegex) {
+        List<HoverDef> toResolve = new ArrayList<>(defs.size());
+
+        for (HoverDef d : defs) {
+            if (d.ResolvedFingerprint != 0
+                    && (!ItemNameMap.IsReady() || d.ResolvedFingerprint == ItemNameMap.GetFingerprint()))
+                continue;
+
+            toResolve.add(d);
+        }
+
+        List<BitSet> regexMatches = lazyRegex ? null : ItemRegexResolver.Resolve(toResolve);
+
+        for (int i = 0; i < toResolve.size(); i++) {
+            HoverDef d = toResolve.get(i);
+            BitSet itemIDs = new BitSet();
+
+            //Remember the IDs from the hoverfile, since `d.ItemIDs` is about to be overwritten
+            if (d.ExplicitItemIDs == null)
+                d.ExplicitItemIDs = d.ItemIDs != null ? d.ItemIDs : new int[0];
+
+            //Insert all item IDs whose name matches any of the def's regexes
+            d.LazyRegex = lazyRegex && d.ItemNamesRegex != null && d.ItemNamesRegex.length > 0;
+            if (!lazyRegex) {
+                BitSet names = regexMatches.get(i);
+                for (int n = names.nextSetBit(0); n >= 0; n = names.nextSetBit(n + 1)) {
+                    for (int id : ItemNameMap.GetItemIDsAt(n)) {
+                        itemIDs.set(id);
+                    }
+                }
+            }
+
+            //If ItemNames is non-empty, insert all item IDs with the exact name(s) specified
+            if (d.ItemNames != null) {
+                for (String name : d.ItemNames) {
+                    for (int id : ItemNameMap.GetItemIDs(name)) {
+                        itemIDs.set(id);
+                    }
+                }
+            }
+
+            //If ItemIDs has any IDs specified, copy them in
+            for (int id : d.ExplicitItemIDs) {
+                if (itemCount > 0 && id >= itemCount) {
+                    log.warn("[CUSTOMITEMHOVERS] Item ID {} ({}) doesn't exist; there are only {} items. Ignoring it",
+                            id, d.GetSourceDescription(), itemCount);
+                    continue;
+                }
+
+                if (id >= 0)
+                    itemIDs.set(id);
+            }
+
+            //Convert `itemIDs` into an array and store it in `d.ItemIDs`
+            d.ItemIDs = itemIDs.stream().toArray();
+            d.ResolvedFingerprint = 0;
+        }
+    }
+}
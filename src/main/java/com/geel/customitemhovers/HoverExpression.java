@@ -0,0 +1,578 @@
+package com.geel.customitemhovers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An arithmetic expression in a hover text token, eg `<%QTY * 650 / 2%>`, `<%VALUE - HIGH_ALCH%>` or
+ * `<%max(VALUE, HIGH_ALCH), compact%>`.
+ *
+ * Expressions are parsed once, when a hover file is loaded, into a tree of closures. Evaluating one is then just the
+ * field reads and arithmetic it describes, without any parsing or allocation. Parts of an expression which don't read
+ * any variable are folded into constants while parsing.
+ *
+ * The same expressions, without the `<%` and `%>`, are used as the `when` clauses of hovers, which are true if they're
+ * non-zero; see `ParseCondition`.
+ *
+ * Grammar, from lowest to highest precedence:
+ * <pre>
+ *   token      := '<%' expr [',' format] '%>'
+ *   condition  := expr
+ *   expr       := and ('||' and)*
+ *   and        := equality ('&&' equality)*
+ *   equality   := comparison (('==' | '!=') comparison)*
+ *   comparison := additive (('<' | '<=' | '>' | '>=') additive)*
+ *   additive   := term (('+' | '-') term)*
+ *   term       := unary (('*' | '/' | '%') unary)*
+ *   unary      := ('-' | '!') unary | primary
+ *   primary    := number | VARIABLE | function '(' expr (',' expr)* ')' | '(' expr ')' | '<%' expr '%>'
+ * </pre>
+ *
+ * Arithmetic is done in doubles. Comparisons and logical operators give 1 for true and 0 for false, and dividing by
+ * zero gives 0, so every expression has a printable result.
+ */
+public class HoverExpression {
+    private final String source;
+    private final ToDoubleFunction<HoverContext> function;
+    private final int dependencies;
+    private final HoverNumberFormat format;
+
+    private HoverExpression(String source, Node root, HoverNumberFormat format) {
+        this.source = source;
+        this.function = root.function;
+        this.dependencies = root.dependencies;
+        this.format = format;
+    }
+
+    /**
+     * @return The token this expression was parsed from, including its `<%` and `%>`
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The HoverTemplate.DEPENDS_ON_* flags for the inputs this expression reads
+     */
+    public int getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return True if this expression has the same value for every item
+     */
+    public boolean isConstant() {
+        return dependencies == 0;
+    }
+
+    /**
+     * @param ctx The item to evaluate for; may be null if this expression is constant
+     */
+    public double evaluate(HoverContext ctx) {
+        return function.applyAsDouble(ctx);
+    }
+
+    /**
+     * @return True if this expression is non-zero for the item described by `ctx`
+     */
+    public boolean test(HoverContext ctx) {
+        return function.applyAsDouble(ctx) != 0;
+    }
+
+    /**
+     * Evaluates this expression and appends the result, in the expression's format.
+     */
+    public void appendTo(StringBuilder out, HoverContext ctx) {
+        format.append(out, function.applyAsDouble(ctx));
+    }
+
+    /**
+     * Parses the expression token starting at `start`, which must point at a `<%`.
+     *
+     * @param end      Receives the index just past the end of the token
+     * @param problems If the token isn't a valid expression, a description of why is added to this, including the
+     *                 position in the token (counting from 0 at its `<`) where parsing stopped
+     * @return The parsed expression, or null if the token is not valid
+     */
+    public static HoverExpression Parse(String text, int start, int[] end, List<String> problems) {
+        Parser parser = new Parser(text, start + 2);
+
+        try {
+            Node root = parser.parseExpression();
+            HoverNumberFormat format = parser.qtyMultFormat;
+
+            if (format != null && root != parser.qtyMultWithFormat)
+                throw new ParseException("A format given to qtymult applies to the whole token, so qtymult must be "
+                        + "the outermost call; put the format at the end instead, eg `<%... , compact%>`");
+
+            parser.skipSpaces();
+            if (parser.consume(",")) {
+                if (format != null)
+                    throw new ParseException("Format given twice");
+
+                format = parser.parseFormat();
+                parser.skipSpaces();
+            }
+
+            if (!parser.consume("%>"))
+                throw new ParseException(parser.atEnd() ? "Missing `%>`" : "Unexpected `" + parser.peekChar() + "`");
+
+            end[0] = parser.pos;
+            return new HoverExpression(text.substring(start, parser.pos), root,
+                    format != null ? format : HoverNumberFormat.GROUPED);
+        } catch (ParseException e) {
+            problems.add(e.getMessage() + " at position " + (parser.pos - start)
+                    + " of `" + snippet(text, start) + "`");
+            return null;
+        }
+    }
+
+    /**
+     * Parses the text of a `when` clause: an expression on its own, without `<%` and `%>`, eg `QTY >= 10 && IN_BANK`.
+     *
+     * @param problems If the text isn't a valid expression, a description of why is added to this, including the
+     *                 position in the text where parsing stopped
+     * @return The parsed expression, or null if the text is not valid
+     */
+    public static HoverExpression ParseCondition(String text, List<String> problems) {
+        Parser parser = new Parser(text, 0);
+        parser.bare = true;
+
+        try {
+            if (text.trim().isEmpty())
+                throw new ParseException("Empty condition");
+
+            Node root = parser.parseExpression();
+
+            if (parser.qtyMultFormat != null)
+                throw new ParseException("A condition can't have a format");
+
+            parser.skipSpaces();
+            if (!parser.atEnd())
+                throw new ParseException("Unexpected `" + parser.peekChar() + "`");
+
+            return new HoverExpression(text, root, HoverNumberFormat.GROUPED);
+        } catch (ParseException e) {
+            problems.add(e.getMessage() + " at position " + parser.pos + " of `when` clause `" + text + "`");
+            return null;
+        }
+    }
+
+    /**
+     * @return The text of the token starting at `start`, for use in error messages
+     */
+    private static String snippet(String text, int start) {
+        int end = text.indexOf("%>", start + 2);
+        end = end < 0 ? text.length() : end + 2;
+
+        return text.substring(start, Math.min(end, start + 60));
+    }
+
+    /**
+     * A compiled part of an expression: a closure which computes it, and what it reads.
+     */
+    private static class Node {
+        final ToDoubleFunction<HoverContext> function;
+        final int dependencies;
+
+        Node(ToDoubleFunction<HoverContext> function, int dependencies) {
+            this.function = function;
+            this.dependencies = dependencies;
+        }
+
+        static Node constant(double value) {
+            return new Node(ctx -> value, 0);
+        }
+
+        /**
+         * @return `node`, or a constant with its value if it doesn't read anything
+         */
+        static Node fold(Node node) {
+            return node.dependencies == 0 ? constant(node.function.applyAsDouble(null)) : node;
+        }
+    }
+
+    private interface BinaryOperator {
+        double apply(double a, double b);
+    }
+
+    private static class ParseException extends Exception {
+        ParseException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A recursive descent parser over the text of a single token.
+     */
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        //True if the text is a bare expression, eg a `when` clause, rather than a `<%...%>` token
+        boolean bare;
+
+        //A format given as qtymult's second argument, and the call it was given to
+        private HoverNumberFormat qtyMultFormat;
+        private Node qtyMultWithFormat;
+
+        Parser(String text, int pos) {
+            this.text = text;
+            this.pos = pos;
+        }
+
+        Node parseExpression() throws ParseException {
+            Node left = parseAnd();
+
+            while (consumeOperator("||")) {
+                left = binary(left, parseAnd(), (a, b) -> a != 0 || b != 0 ? 1 : 0);
+            }
+
+            return left;
+        }
+
+        private Node parseAnd() throws ParseException {
+            Node left = parseEquality();
+
+            while (consumeOperator("&&")) {
+                left = binary(left, parseEquality(), (a, b) -> a != 0 && b != 0 ? 1 : 0);
+            }
+
+            return left;
+        }
+
+        private Node parseEquality() throws ParseException {
+            Node left = parseComparison();
+
+            while (true) {
+                if (consumeOperator("==")) {
+                    left = binary(left, parseComparison(), (a, b) -> a == b ? 1 : 0);
+                } else if (consumeOperator("!=")) {
+                    left = binary(left, parseComparison(), (a, b) -> a != b ? 1 : 0);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseComparison() throws ParseException {
+            Node left = parseAdditive();
+
+            while (true) {
+                skipSpaces();
+
+                if (consumeOperator("<=")) {
+                    left = binary(left, parseAdditive(), (a, b) -> a <= b ? 1 : 0);
+                } else if (consumeOperator(">=")) {
+                    left = binary(left, parseAdditive(), (a, b) -> a >= b ? 1 : 0);
+                } else if (!lookingAt("<%") && consumeOperator("<")) {
+                    left = binary(left, parseAdditive(), (a, b) -> a < b ? 1 : 0);
+                } else if (consumeOperator(">")) {
+                    left = binary(left, parseAdditive(), (a, b) -> a > b ? 1 : 0);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseAdditive() throws ParseException {
+            Node left = parseTerm();
+
+            while (true) {
+                if (consumeOperator("+")) {
+                    left = binary(left, parseTerm(), (a, b) -> a + b);
+                } else if (consumeOperator("-")) {
+                    left = binary(left, parseTerm(), (a, b) -> a - b);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseTerm() throws ParseException {
+            Node left = parseUnary();
+
+            while (true) {
+                skipSpaces();
+
+                if (consumeOperator("*")) {
+                    left = binary(left, parseUnary(), (a, b) -> a * b);
+                } else if (consumeOperator("/")) {
+                    left = binary(left, parseUnary(), (a, b) -> b == 0 ? 0 : a / b);
+                } else if (!lookingAt("%>") && consumeOperator("%")) {
+                    left = binary(left, parseUnary(), (a, b) -> b == 0 ? 0 : a % b);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private Node parseUnary() throws ParseException {
+            if (consumeOperator("-"))
+                return apply(parseUnary(), v -> -v);
+
+            if (consumeOperator("!"))
+                return apply(parseUnary(), v -> v == 0 ? 1 : 0);
+
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() throws ParseException {
+            skipSpaces();
+
+            if (atEnd())
+                throw new ParseException(bare ? "Missing value at the end" : "Missing `%>`");
+
+            char c = text.charAt(pos);
+
+            if (lookingAt("%>") || c == ')' || c == ',')
+                throw new ParseException("Missing value before `" + (lookingAt("%>") ? "%>" : c) + "`");
+
+            //Nested token, eg the <%VALUE%> in <%qtymult(<%VALUE%>)%>
+            if (consume("<%")) {
+                Node inner = parseExpression();
+                skipSpaces();
+                if (!consume("%>"))
+                    throw new ParseException("Missing `%>` after nested expression");
+
+                return inner;
+            }
+
+            if (consume("(")) {
+                Node inner = parseExpression();
+                skipSpaces();
+                if (!consume(")"))
+                    throw new ParseException("Missing `)`");
+
+                return inner;
+            }
+
+            if (Character.isDigit(c) || c == '.')
+                return parseNumber();
+
+            if (Character.isLetter(c) || c == '_') {
+                int nameStart = pos;
+                String name = parseIdentifier();
+                skipSpaces();
+
+                if (lookingAt("("))
+                    return parseCall(name);
+
+                HoverVariable variable = HoverVariable.fromName(name);
+                if (variable == null) {
+                    //Point the error at the name rather than past it
+                    pos = nameStart;
+                    throw new ParseException("Unknown variable `" + name + "`");
+                }
+
+                return new Node(variable::get, variable.getDependencies());
+            }
+
+            throw new ParseException("Unexpected `" + c + "`");
+        }
+
+        private Node parseNumber() throws ParseException {
+            int numberStart = pos;
+            boolean point = false;
+
+            while (!atEnd() && (Character.isDigit(text.charAt(pos)) || (text.charAt(pos) == '.' && !point))) {
+                if (text.charAt(pos) == '.')
+                    point = true;
+                pos++;
+            }
+
+            try {
+                return Node.constant(Double.parseDouble(text.substring(numberStart, pos)));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Bad number `" + text.substring(numberStart, pos) + "`");
+            }
+        }
+
+        private Node parseCall(String name) throws ParseException {
+            consume("(");
+
+            List<Node> args = new ArrayList<>();
+            HoverNumberFormat format = null;
+
+            skipSpaces();
+            if (!consume(")")) {
+                do {
+                    //qtymult may be given a format as its last argument, eg qtymult(650, compact)
+                    if (name.equals("qtymult") && !args.isEmpty() && isFormatArgument()) {
+                        format = parseFormat();
+                        skipSpaces();
+                        break;
+                    }
+
+                    args.add(parseExpression());
+                    skipSpaces();
+                } while (consume(","));
+
+                if (!consume(")"))
+                    throw new ParseException("Missing `)` after arguments to " + name);
+            }
+
+            Node call = call(name, args);
+
+            if (format != null) {
+                qtyMultFormat = format;
+                qtyMultWithFormat = call;
+            }
+
+            return call;
+        }
+
+        /**
+         * @return True if the next argument is a lowercase name on its own, which can only be a format
+         */
+        private boolean isFormatArgument() {
+            skipSpaces();
+
+            int nameEnd = skipIdentifier(pos);
+            if (nameEnd == pos || !Character.isLowerCase(text.charAt(pos)))
+                return false;
+
+            int after = nameEnd;
+            while (after < text.length() && text.charAt(after) == ' ')
+                after++;
+
+            return after < text.length() && text.charAt(after) == ')';
+        }
+
+        private Node call(String name, List<Node> args) throws ParseException {
+            switch (name) {
+                case "qtymult": {
+                    //qtymult on its own is the same as QTY
+                    if (args.isEmpty())
+                        return new Node(ctx -> ctx.quantity, HoverTemplate.DEPENDS_ON_QTY);
+
+                    checkArgCount(name, args, 1, 1);
+                    ToDoubleFunction<HoverContext> x = args.get(0).function;
+                    return new Node(ctx -> ctx.quantity * x.applyAsDouble(ctx),
+                            HoverTemplate.DEPENDS_ON_QTY | args.get(0).dependencies);
+                }
+                case "min":
+                    checkArgCount(name, args, 1, Integer.MAX_VALUE);
+                    return reduce(args, Math::min);
+                case "max":
+                    checkArgCount(name, args, 1, Integer.MAX_VALUE);
+                    return reduce(args, Math::max);
+                case "abs":
+                    checkArgCount(name, args, 1, 1);
+                    return apply(args.get(0), Math::abs);
+                case "floor":
+                    checkArgCount(name, args, 1, 1);
+                    return apply(args.get(0), Math::floor);
+                case "ceil":
+                    checkArgCount(name, args, 1, 1);
+                    return apply(args.get(0), Math::ceil);
+                case "round":
+                    checkArgCount(name, args, 1, 1);
+                    return apply(args.get(0), v -> Math.floor(v + 0.5));
+                case "if": {
+                    checkArgCount(name, args, 3, 3);
+                    ToDoubleFunction<HoverContext> cond = args.get(0).function;
+                    ToDoubleFunction<HoverContext> then = args.get(1).function;
+                    ToDoubleFunction<HoverContext> otherwise = args.get(2).function;
+
+                    return Node.fold(new Node(
+                            ctx -> cond.applyAsDouble(ctx) != 0 ? then.applyAsDouble(ctx) : otherwise.applyAsDouble(ctx),
+                            args.get(0).dependencies | args.get(1).dependencies | args.get(2).dependencies));
+                }
+                default:
+                    throw new ParseException("Unknown function `" + name + "`");
+            }
+        }
+
+        private static void checkArgCount(String name, List<Node> args, int min, int max) throws ParseException {
+            if (args.size() < min || args.size() > max) {
+                String expected = min == max ? String.valueOf(min) : max == Integer.MAX_VALUE ? "at least " + min
+                        : min + " to " + max;
+                throw new ParseException(name + " takes " + expected + " argument" + (min == 1 ? "" : "s")
+                        + ", not " + args.size());
+            }
+        }
+
+        private static Node apply(Node operand, DoubleUnaryOperator op) {
+            ToDoubleFunction<HoverContext> f = operand.function;
+            return Node.fold(new Node(ctx -> op.applyAsDouble(f.applyAsDouble(ctx)), operand.dependencies));
+        }
+
+        private static Node reduce(List<Node> args, BinaryOperator op) {
+            Node result = args.get(0);
+            for (int i = 1; i < args.size(); i++) {
+                result = binary(result, args.get(i), op);
+            }
+
+            return result;
+        }
+
+        private static Node binary(Node left, Node right, BinaryOperator op) {
+            ToDoubleFunction<HoverContext> l = left.function;
+            ToDoubleFunction<HoverContext> r = right.function;
+
+            return Node.fold(new Node(ctx -> op.apply(l.applyAsDouble(ctx), r.applyAsDouble(ctx)),
+                    left.dependencies | right.dependencies));
+        }
+
+        HoverNumberFormat parseFormat() throws ParseException {
+            skipSpaces();
+            String name = parseIdentifier();
+            HoverNumberFormat format = HoverNumberFormat.fromName(name);
+
+            if (format == null)
+                throw new ParseException("Unknown format `" + name + "`");
+
+            return format;
+        }
+
+        private String parseIdentifier() {
+            int nameStart = pos;
+            pos = skipIdentifier(pos);
+
+            return text.substring(nameStart, pos);
+        }
+
+        private int skipIdentifier(int at) {
+            while (at < text.length() && (Character.isLetterOrDigit(text.charAt(at)) || text.charAt(at) == '_'))
+                at++;
+
+            return at;
+        }
+
+        /**
+         * Skips spaces, then consumes `op` if it's next.
+         */
+        private boolean consumeOperator(String op) {
+            skipSpaces();
+            return consume(op);
+        }
+
+        boolean consume(String s) {
+            if (!lookingAt(s))
+                return false;
+
+            pos += s.length();
+            return true;
+        }
+
+        private boolean lookingAt(String s) {
+            return text.startsWith(s, pos);
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+
+        boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        char peekChar() {
+            return text.charAt(pos);
+        }
+    }
+}
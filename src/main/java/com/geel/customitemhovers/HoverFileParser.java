@@ -1,18 +1,75 @@
 package com.geel.customitemhovers;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 @Slf4j
 public class HoverFileParser {
+    //Gson is thread safe, so one instance is shared by every load
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(HoverDef.Box.class, new BoxAdapter())
+            .create();
+
+    //Small pool which files are parsed on; its threads exit when idle
+    private static final ThreadPoolExecutor LOAD_POOL = createLoadPool();
+
+    /**
+     * The outcome of parsing a single file.
+     */
+    public static class ParseResult {
+        public final Path path;
+
+        //The parsed file, or null if the file isn't a hover file or couldn't be parsed
+        public final HoverFile file;
+
+        //SHA-256 of the file's contents, or null if it couldn't be read
+        public final byte[] hash;
+
+        //Why the file couldn't be read or parsed, if it couldn't be
+        public final Exception error;
+
+        public final long parseNanos;
+
+        ParseResult(Path path, HoverFile file, byte[] hash, Exception error, long parseNanos) {
+            this.path = path;
+            this.file = file;
+            this.hash = hash;
+            this.error = error;
+            this.parseNanos = parseNanos;
+        }
+    }
+
     public static ArrayList<HoverFile> readHoverFiles(Path dirPath) {
         ArrayList<HoverFile> ret = new ArrayList<>();
 
@@ -20,76 +77,339 @@ public class HoverFileParser {
             return ret;
         }
 
-        try {
-            Stream fileStream = Files.list(dirPath);
-            for (Iterator it = fileStream.iterator(); it.hasNext(); ) {
-                Path p = (Path) it.next();
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> fileStream = Files.list(dirPath)) {
+            for (Iterator<Path> it = fileStream.iterator(); it.hasNext(); ) {
+                Path p = it.next();
 
-                //Ensure it's a regular readable file
-                if(!Files.isRegularFile(p) || !Files.isReadable(p))
-                    continue;
+                if(isHoverFileCandidate(p))
+                    paths.add(p);
+            }
+        } catch (IOException e) {
+            log.error(e.toString());
 
-                //Ensure it's a json file
-                if(!p.toString().endsWith(".json"))
-                    continue;
+            return ret;
+        }
 
-                HoverFile file = parseHoverFile(p);
+        for (ParseResult r : parseHoverFiles(paths)) {
+            if (r.error != null) {
+                log.error("[CUSTOMITEMHOVERS] Couldn't load {}: {}", r.path.getFileName(), r.error.toString());
+                continue;
+            }
 
-                //Must absolutely be a hover file
-                if(file == null || file.IsHoverMap == null || !file.IsHoverMap.equals("absolutely"))
-                    continue;
+            if (r.file != null)
+                ret.add(r.file);
+        }
 
-                //Post-process (right now just combine arrays of text into single strings)
-                postProcessHoverFile(file);
+        return ret;
+    }
 
-                ret.add(file);
-            }
-        } catch (IOException e) {
-            log.error(e.toString());
+    /**
+     * @return True if `p` is a regular, readable json file or hover bundle, which may or may not turn out to be a
+     * hover file
+     */
+    public static boolean isHoverFileCandidate(Path p) {
+        //Ensure it's a json file or a bundle
+        if(!isJsonFile(p) && !isBundleFile(p))
+            return false;
 
-            return ret;
+        //Ensure it's a regular readable file
+        return Files.isRegularFile(p) && Files.isReadable(p);
+    }
+
+    public static boolean isJsonFile(Path p) {
+        return p.toString().endsWith(".json");
+    }
+
+    public static boolean isBundleFile(Path p) {
+        return p.toString().endsWith(HoverBundle.EXTENSION);
+    }
+
+    /**
+     * Parses several files concurrently, on a small pool.
+     *
+     * Each file succeeds or fails on its own; one bad file doesn't affect the others.
+     *
+     * @return One result per path, in the same order as `paths`
+     */
+    public static List<ParseResult> parseHoverFiles(Collection<Path> paths) {
+        List<Future<ParseResult>> futures = new ArrayList<>(paths.size());
+        for (Path p : paths) {
+            futures.add(LOAD_POOL.submit(() -> parseHoverFile(p)));
+        }
+
+        List<ParseResult> ret = new ArrayList<>(paths.size());
+        Iterator<Path> pathIt = paths.iterator();
+
+        for (Future<ParseResult> future : futures) {
+            Path p = pathIt.next();
+
+            try {
+                ret.add(future.get());
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                ret.add(new ParseResult(p, null, null, cause, 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ret.add(new ParseResult(p, null, null, e, 0));
+            }
         }
 
         return ret;
     }
 
-    private static HoverFile parseHoverFile(Path hoverFile){
+    /**
+     * Parses and post-processes a single hover file, streaming it from disk as UTF-8. Hover bundles are read whole
+     * and decoded directly instead; see `HoverBundle`.
+     *
+     * The contents are hashed while they're being parsed, so the file is only read once.
+     *
+     * @return The result; its `file` is null if the file is valid json but not a hover file
+     */
+    public static ParseResult parseHoverFile(Path hoverFile) {
+        long start = System.nanoTime();
+
+        MessageDigest digest;
         try {
-            byte[] fileBytes = Files.readAllBytes(hoverFile);
-            String fileString = new String(fileBytes);
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
 
-            Gson gson = new Gson();
-            return gson.fromJson(fileString, HoverFile.class);
-        } catch (Exception e) {
-            log.error(e.toString());
-            return null;
+        if (isBundleFile(hoverFile)) {
+            try {
+                HoverFile file = HoverBundle.Load(hoverFile, digest);
+                setSources(hoverFile, file);
+                return new ParseResult(hoverFile, file, digest.digest(), null, System.nanoTime() - start);
+            } catch (IOException e) {
+                return new ParseResult(hoverFile, null, null, e, System.nanoTime() - start);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(hoverFile, StandardOpenOption.READ);
+             InputStream in = new DigestInputStream(new BufferedInputStream(Channels.newInputStream(channel)), digest);
+             JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            HoverFile file = GSON.fromJson(reader, HoverFile.class);
+
+            //Gson stops after the first json value; anything but whitespace (or comments, which Gson accepts inside the
+            //value too) after it means the file is broken, eg two files pasted together. An empty file has no value,
+            //and is skipped like any other json file which isn't a hover file.
+            reader.setLenient(true);
+            if (file != null && reader.peek() != JsonToken.END_DOCUMENT)
+                throw new JsonParseException("Unexpected content after the end of the hover file");
+
+            //Read whatever follows the json value, so that the hash covers the whole file
+            byte[] rest = new byte[4096];
+            while (in.read(rest) >= 0) {
+                //Discard
+            }
+
+            file = postProcessHoverFile(hoverFile, file);
+            if (file != null)
+                setSources(hoverFile, file);
+
+            return new ParseResult(hoverFile, file, digest.digest(), null, System.nanoTime() - start);
+        } catch (IOException | JsonParseException e) {
+            return new ParseResult(hoverFile, null, null, e, System.nanoTime() - start);
         }
     }
 
-    private static void postProcessHoverFile(HoverFile f) {
+    /**
+     * Checks that a parsed file really is a hover file, and post-processes it (combine arrays of text into single
+     * strings, and compile them into templates).
+     *
+     * @return `f`, or null if it's not a hover file
+     */
+    private static HoverFile postProcessHoverFile(Path p, HoverFile f) {
+        //Must absolutely be a hover file
+        if(f == null || f.IsHoverMap == null || !f.IsHoverMap.equals("absolutely"))
+            return null;
+
+        if(f.Hovers == null)
+            f.Hovers = new HoverDef[0];
+
         for(HoverDef d : f.Hovers) {
-            parseHoverDefHovers(d);
+            String[] conditions = parseHoverDefHovers(d);
+            compileHoverDefHovers(p, d, conditions);
+        }
+
+        return f;
+    }
+
+    private static void setSources(Path p, HoverFile f) {
+        String name = p.getFileName().toString();
+
+        for (int i = 0; i < f.Hovers.length; i++) {
+            f.Hovers[i].SourceFile = name;
+            f.Hovers[i].SourceIndex = i;
         }
     }
 
-    private static StringBuilder _hoverBuilder = new StringBuilder();
-    private static void parseHoverDefHovers(HoverDef d) {
+    /**
+     * Joins the lines of each of `d`'s hover boxes into `d.ParsedHoverTexts`.
+     *
+     * @return Each box's own `when` clause, or null for boxes without one
+     */
+    private static String[] parseHoverDefHovers(HoverDef d) {
         d.ParsedHoverTexts = new String[d.HoverTexts.length];
+        String[] conditions = new String[d.HoverTexts.length];
+        StringBuilder hoverBuilder = new StringBuilder();
 
         int i = 0;
-        for(String[] hovers : d.HoverTexts) {
-            _hoverBuilder.setLength(0); //clear stringbuilder but keep memory allocated
+        for(HoverDef.Box box : d.HoverTexts) {
+            hoverBuilder.setLength(0); //clear stringbuilder but keep memory allocated
 
             boolean firstLine = true;
-            for(String hoverLine : hovers) {
+            for(String hoverLine : box.Lines) {
                 if(!firstLine)
-                    _hoverBuilder.append("</br>");
-                _hoverBuilder.append(hoverLine);
+                    hoverBuilder.append("</br>");
+                hoverBuilder.append(hoverLine);
 
                 firstLine = false;
             }
 
-            d.ParsedHoverTexts[i++] = _hoverBuilder.toString();
+            conditions[i] = box.When;
+            d.ParsedHoverTexts[i++] = hoverBuilder.toString();
+        }
+
+        //The individual lines aren't needed any more
+        d.HoverTexts = null;
+
+        return conditions;
+    }
+
+    /**
+     * Compiles `d.ParsedHoverTexts` into `d.Templates`, each under its box's condition and the def's, logging any
+     * unknown tokens found along the way.
+     *
+     * Boxes whose `when` clause (or whose def's) isn't valid are left out, rather than shown for every item.
+     *
+     * @param conditions Each box's own `when` clause, or null for boxes without one
+     */
+    private static void compileHoverDefHovers(Path p, HoverDef d, String[] conditions) {
+        List<HoverTemplate> templates = new ArrayList<>(d.ParsedHoverTexts.length);
+        List<String> texts = new ArrayList<>(d.ParsedHoverTexts.length);
+        List<String> problems = new ArrayList<>();
+
+        HoverExpression defCondition = d.When == null ? null : HoverExpression.ParseCondition(d.When, problems);
+        boolean defConditionValid = d.When == null || defCondition != null;
+
+        for (int i = 0; i < d.ParsedHoverTexts.length && defConditionValid; i++) {
+            HoverExpression condition = defCondition;
+
+            if (conditions[i] != null) {
+                condition = HoverExpression.ParseCondition(conditions[i], problems);
+                if (condition == null)
+                    continue;
+
+                //Both must hold; each is valid on its own, so together they are too
+                if (d.When != null)
+                    condition = HoverExpression.ParseCondition("(" + d.When + ") && (" + conditions[i] + ")", problems);
+            }
+
+            //Never shown, eg. `"when": "0"`
+            if (condition != null && condition.isConstant() && !condition.test(null))
+                continue;
+
+            templates.add(HoverTemplate.Compile(d.ParsedHoverTexts[i], condition, problems));
+            texts.add(d.ParsedHoverTexts[i]);
+        }
+
+        d.Templates = templates.toArray(new HoverTemplate[0]);
+        d.ParsedHoverTexts = texts.toArray(new String[0]);
+        d.When = null;
+
+        for (String problem : problems) {
+            log.warn("[CUSTOMITEMHOVERS] {}: {}", p.getFileName(), problem);
+        }
+    }
+
+    /**
+     * Reads an entry of `hovers`: either an array of lines, or an object with the lines in `text` (which may also be a
+     * single string) and an optional `when` clause.
+     */
+    private static class BoxAdapter extends TypeAdapter<HoverDef.Box> {
+        @Override
+        public HoverDef.Box read(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case BEGIN_ARRAY:
+                    return new HoverDef.Box(null, readLines(in));
+                case BEGIN_OBJECT: {
+                    String when = null;
+                    String[] lines = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "when":
+                                when = in.nextString();
+                                break;
+                            case "text":
+                                lines = readLines(in);
+                                break;
+                            default:
+                                in.skipValue();
+                                break;
+                        }
+                    }
+                    in.endObject();
+
+                    if (lines == null)
+                        throw new JsonParseException("Hover box without `text` at " + in.getPath());
+
+                    return new HoverDef.Box(when, lines);
+                }
+                default:
+                    throw new JsonParseException("Expected a hover box (an array of lines, or an object) at "
+                            + in.getPath());
+            }
+        }
+
+        private static String[] readLines(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.STRING)
+                return new String[]{in.nextString()};
+
+            List<String> lines = new ArrayList<>();
+
+            in.beginArray();
+            while (in.hasNext()) {
+                lines.add(in.nextString());
+            }
+            in.endArray();
+
+            return lines.toArray(new String[0]);
+        }
+
+        @Override
+        public void write(JsonWriter out, HoverDef.Box box) throws IOException {
+            if (box.When != null) {
+                out.beginObject().name("when").value(box.When).name("text");
+            }
+
+            out.beginArray();
+            for (String line : box.Lines) {
+                out.value(line);
+            }
+            out.endArray();
+
+            if (box.When != null)
+                out.endObject();
         }
     }
+
+    private static ThreadPoolExecutor createLoadPool() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "customitemhovers-loader-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
 }
@@ -0,0 +1,262 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Tracks every loaded hover file and what it contributes to the hover index.
+ *
+ * Only files which changed are parsed and resolved, so a change to one file only re-parses and re-resolves that file.
+ * A file whose contents hash to the same value as the currently loaded version isn't resolved again. All files parsed
+ * in one call are resolved together, in a single batch. Identical hover texts are shared between all loaded files; see
+ * `HoverInterner`.
+ *
+ * Not thread safe; callers must serialize access.
+ */
+@Slf4j
+public class HoverFileSet {
+    /**
+     * A single hover file, as currently loaded.
+     */
+    private static class LoadedFile {
+        final byte[] hash;
+
+        //Size and modification time when the file was read; used to skip unchanged files on a full rescan
+        final long size;
+        final FileTime lastModified;
+
+        //The file's HoverDefs, with their `ItemIDs` already resolved
+        final HoverDef[] defs;
+
+        final long parseNanos;
+
+        LoadedFile(byte[] hash, long size, FileTime lastModified, HoverDef[] defs, long parseNanos) {
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.defs = defs;
+            this.parseNanos = parseNanos;
+        }
+    }
+
+    //Called with the HoverDefs of every freshly parsed file to fill in their `ItemIDs`
+    private final Consumer<List<HoverDef>> resolver;
+
+    //Keyed by absolute path; sorted so that the index is built in a stable order
+    private final SortedMap<Path, LoadedFile> files = new TreeMap<>();
+
+    //Where the time spent in each phase of a reload is recorded
+    private final HoverMetrics metrics;
+
+    public HoverFileSet(Consumer<List<HoverDef>> resolver, HoverMetrics metrics) {
+        this.resolver = resolver;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Brings every file in `dir` up to date, and forgets files which no longer exist.
+     *
+     * Files whose size and modification time haven't changed since they were loaded aren't read again.
+     *
+     * @return True if anything changed
+     */
+    public boolean loadAll(Path dir) throws IOException {
+        long scanStart = metrics.start();
+        Set<Path> present = new HashSet<>();
+
+        if (Files.isDirectory(dir) && Files.isReadable(dir)) {
+            try (Stream<Path> fileStream = Files.list(dir)) {
+                fileStream.forEach(p -> present.add(p.toAbsolutePath()));
+            }
+        }
+
+        boolean changed = files.keySet().retainAll(present);
+        changed |= update(present, true, scanStart);
+
+        return changed;
+    }
+
+    /**
+     * Brings the given files up to date: parses each one if it's new or has changed, or forgets it if it has been
+     * removed or is no longer a hover file. Every file is read and hashed, since a watcher event means it was touched.
+     *
+     * @return True if any file's contribution to the index changed
+     * @see #update(Collection, boolean)
+     */
+    public boolean update(Collection<Path> paths) {
+        return update(paths, false);
+    }
+
+    /**
+     * Brings the given files up to date. Files are parsed concurrently; see `HoverFileParser.parseHoverFiles`.
+     *
+     * If a file can't be read or isn't valid json (eg. it's halfway through being saved), the previously loaded
+     * version, if any, is kept.
+     *
+     * @param trustTimestamps If true, a loaded file whose size and modification time are unchanged isn't read again
+     * @return True if any file's contribution to the index changed
+     */
+    public boolean update(Collection<Path> paths, boolean trustTimestamps) {
+        return update(paths, trustTimestamps, metrics.start());
+    }
+
+    /**
+     * @param scanStart When scanning for changed files started, as returned by `HoverMetrics.start`
+     */
+    private boolean update(Collection<Path> paths, boolean trustTimestamps, long scanStart) {
+        boolean changed = false;
+        List<Path> toParse = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+
+        for (Path p : paths) {
+            p = p.toAbsolutePath();
+
+            if (!HoverFileParser.isHoverFileCandidate(p)) {
+                changed |= files.remove(p) != null;
+                continue;
+            }
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(p, BasicFileAttributes.class);
+            } catch (IOException e) {
+                log.error("[CUSTOMITEMHOVERS] Couldn't read {}: {}", p.getFileName(), e.toString());
+                continue;
+            }
+
+            LoadedFile existing = files.get(p);
+            if (trustTimestamps && existing != null && existing.size == attrs.size()
+                    && existing.lastModified.equals(attrs.lastModifiedTime()))
+                continue;
+
+            toParse.add(p);
+            attributes.put(p, attrs);
+        }
+
+        metrics.reloadScan.recordSince(scanStart);
+
+        if (toParse.isEmpty())
+            return changed;
+
+        Map<Path, LoadedFile> parsed = new HashMap<>();
+        List<HoverDef> toResolve = new ArrayList<>();
+
+        long parseStart = metrics.start();
+        List<HoverFileParser.ParseResult> results = HoverFileParser.parseHoverFiles(toParse);
+        metrics.reloadParse.recordSince(parseStart);
+
+        for (HoverFileParser.ParseResult r : results) {
+            if (r.error != null) {
+                log.error("[CUSTOMITEMHOVERS] Couldn't parse {}: {}", r.path.getFileName(), r.error.toString());
+                continue;
+            }
+
+            log.debug("[CUSTOMITEMHOVERS] Parsed {} in {}us", r.path.getFileName(), r.parseNanos / 1000);
+
+            if (r.file == null) {
+                changed |= files.remove(r.path) != null;
+                continue;
+            }
+
+            BasicFileAttributes attrs = attributes.get(r.path);
+            LoadedFile existing = files.get(r.path);
+
+            //Touched, but the contents are the same as what's loaded; just remember the new timestamp
+            if (existing != null && Arrays.equals(existing.hash, r.hash)) {
+                files.put(r.path, new LoadedFile(existing.hash, attrs.size(), attrs.lastModifiedTime(),
+                        existing.defs, existing.parseNanos));
+                continue;
+            }
+
+            parsed.put(r.path, new LoadedFile(r.hash, attrs.size(), attrs.lastModifiedTime(), r.file.Hovers,
+                    r.parseNanos));
+            toResolve.addAll(Arrays.asList(r.file.Hovers));
+        }
+
+        if (parsed.isEmpty())
+            return changed;
+
+        intern(parsed.keySet(), toResolve);
+        resolve(toResolve);
+        files.putAll(parsed);
+
+        return true;
+    }
+
+    /**
+     * @return The HoverDefs of every loaded file, in the order they're added to the index
+     */
+    public List<HoverDef> getDefs() {
+        List<HoverDef> defs = new ArrayList<>();
+
+        for (LoadedFile f : files.values()) {
+            defs.addAll(Arrays.asList(f.defs));
+        }
+
+        return defs;
+    }
+
+    /**
+     * Resolves the HoverDefs of every loaded file again, eg. because the item name map changed.
+     */
+    public void resolveAll() {
+        resolve(getDefs());
+    }
+
+    /**
+     * Shares identical templates between freshly parsed defs, and with the defs of files which stay loaded.
+     *
+     * @param replaced Files whose currently loaded defs are being replaced by `defs`
+     */
+    private void intern(Set<Path> replaced, List<HoverDef> defs) {
+        HoverInterner interner = new HoverInterner();
+
+        for (Map.Entry<Path, LoadedFile> e : files.entrySet()) {
+            if (replaced.contains(e.getKey()))
+                continue;
+
+            for (HoverDef d : e.getValue().defs) {
+                interner.add(d);
+            }
+        }
+
+        for (HoverDef d : defs) {
+            interner.intern(d);
+        }
+    }
+
+    private void resolve(List<HoverDef> defs) {
+        long start = metrics.start();
+        resolver.accept(defs);
+        metrics.reloadResolve.recordSince(start);
+    }
+
+    /**
+     * Builds an index out of the HoverDefs of every loaded file.
+     */
+    public HoverIndex buildIndex(int itemCount) {
+        long start = metrics.start();
+        HoverIndex.Builder builder = new HoverIndex.Builder();
+
+        for (LoadedFile f : files.values()) {
+            for (HoverDef d : f.defs) {
+                builder.add(d);
+            }
+        }
+
+        HoverIndex index = builder.build(itemCount);
+        metrics.reloadIndex.recordSince(start);
+
+        log.debug("[CUSTOMITEMHOVERS] Built hover index: {}", index.getMemoryReport());
+
+        return index;
+    }
+}
@@ -0,0 +1,121 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the `customitemhovers` directory on a background thread.
+ *
+ * Editors tend to produce several events per save (truncate, write, rename...), so events are debounced: the
+ * callback only runs once the directory has been quiet for `DEBOUNCE_MS`. The callback runs on the watcher thread,
+ * and receives the absolute paths of every file which changed during the burst, or null if events were lost and the
+ * whole directory should be rescanned.
+ */
+@Slf4j
+public class HoverFileWatcher {
+    private static final long DEBOUNCE_MS = 250;
+
+    private final Path dir;
+    private final Consumer<Set<Path>> onChange;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public HoverFileWatcher(Path dir, Consumer<Set<Path>> onChange) {
+        this.dir = dir;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Registers the watch and starts the watcher thread.
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+        thread = new Thread(this::run, "customitemhovers-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the watcher thread. Safe to call more than once.
+     */
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.error("[CUSTOMITEMHOVERS]: exception closing hover watcher", e);
+            }
+
+            watchService = null;
+        }
+
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void run() {
+        WatchService service = watchService;
+
+        try {
+            while (true) {
+                Set<Path> changed = new HashSet<>();
+                boolean overflowed = drain(service.take(), changed);
+
+                //Keep absorbing events until the directory has been quiet for a while
+                WatchKey key;
+                while ((key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    overflowed |= drain(key, changed);
+                }
+
+                try {
+                    onChange.accept(overflowed ? null : changed);
+                } catch (Exception e) {
+                    log.error("[CUSTOMITEMHOVERS]: exception handling hover directory change", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //Stopped
+        }
+    }
+
+    /**
+     * Adds the paths of all of `key`'s pending events to `changed`.
+     *
+     * @return True if any events were lost
+     */
+    private boolean drain(WatchKey key, Set<Path> changed) {
+        boolean overflowed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflowed = true;
+                continue;
+            }
+
+            changed.add(dir.resolve((Path) event.context()).toAbsolutePath());
+        }
+
+        //Enable more events to be queued
+        key.reset();
+
+        return overflowed;
+    }
+}
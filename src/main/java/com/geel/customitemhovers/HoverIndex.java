@@ -0,0 +1,254 @@
+package com.geel.customitemhovers;
+
+import java.util.*;
+
+/**
+ * An immutable index of (item ID -> hover templates), built once whenever hovers are loaded.
+ *
+ * The index is a plain array indexed by item ID, so a lookup is a single array access with no boxing. Each entry is
+ * the flattened list of templates of every HoverDef targeting that item, in load order. Items targeted by exactly
+ * one HoverDef share that def's own `Templates` array, and items targeted by the same several defs share a single
+ * flattened array, so even very broad regexes don't allocate per item.
+ *
+ * Regexes resolved lazily (see `HoverDef.LazyRegex`) are matched the first time an item is looked up, by
+ * `LazyRegexTargets`, and the item's templates are remembered from then on.
+ */
+public class HoverIndex {
+    public static final HoverIndex EMPTY = new HoverIndex(new HoverTemplate[0][], null, HoverMemoryReport.EMPTY);
+
+    //Templates for each item ID; null if the item has no hovers
+    private final HoverTemplate[][] byItemID;
+
+    //Null if no regex is resolved lazily
+    private final LazyRegexTargets lazyTargets;
+
+    private final HoverMemoryReport memoryReport;
+
+    private HoverIndex(HoverTemplate[][] byItemID, LazyRegexTargets lazyTargets, HoverMemoryReport memoryReport) {
+        this.byItemID = byItemID;
+        this.lazyTargets = lazyTargets;
+        this.memoryReport = memoryReport;
+    }
+
+    /**
+     * @return The templates to render for an item, or null if it has no hovers. The array must not be modified.
+     */
+    public HoverTemplate[] get(int itemID) {
+        if (itemID < 0 || itemID >= byItemID.length)
+            return null;
+
+        if (lazyTargets != null)
+            return lazyTargets.get(itemID, byItemID[itemID]);
+
+        return byItemID[itemID];
+    }
+
+    /**
+     * Like `get`, but doesn't match lazily resolved regexes against an item which hasn't been looked up yet.
+     */
+    public HoverTemplate[] peek(int itemID) {
+        if (itemID < 0 || itemID >= byItemID.length)
+            return null;
+
+        if (lazyTargets != null)
+            return lazyTargets.peek(itemID, byItemID[itemID]);
+
+        return byItemID[itemID];
+    }
+
+    /**
+     * @return An item which `get` matched lazily resolved regexes against, giving it hovers which read its price that
+     * `peek` didn't return before; or -1 if there are no more. Each such item is returned once.
+     */
+    public int pollLazilyPricedItem() {
+        return lazyTargets != null ? lazyTargets.pollNewlyPriced() : -1;
+    }
+
+    /**
+     * @return One more than the highest item ID this index can hold
+     */
+    public int size() {
+        return byItemID.length;
+    }
+
+    /**
+     * @return Roughly how much memory this index retains
+     */
+    public HoverMemoryReport getMemoryReport() {
+        return memoryReport;
+    }
+
+    /**
+     * Collects HoverDefs, whose `ItemIDs` have already been resolved, and builds them into a HoverIndex.
+     */
+    public static class Builder {
+        private final List<HoverDef> defs = new ArrayList<>();
+
+        public Builder add(HoverDef d) {
+            defs.add(d);
+            return this;
+        }
+
+        /**
+         * @param itemCount Number of items in the game. The index covers IDs below it; defs' IDs at or past it are
+         *                  ignored, so that a stray huge ID can't size the index's arrays to match it.
+         */
+        public HoverIndex build(int itemCount) {
+            int size = itemCount;
+
+            //First pass: count the defs and templates attached to each item
+            int[] defCounts = new int[size];
+            int[] templateCounts = new int[size];
+
+            for (HoverDef d : defs) {
+                for (int id : d.ItemIDs) {
+                    if (id < 0 || id >= size)
+                        continue;
+
+                    defCounts[id]++;
+                    templateCounts[id] += d.Templates.length;
+                }
+            }
+
+            //Second pass: share single-def arrays, and list the defs of every other item, in one flat array
+            HoverTemplate[][] byItemID = new HoverTemplate[size][];
+            int[] starts = new int[size + 1];
+
+            for (int id = 0; id < size; id++) {
+                starts[id + 1] = starts[id] + (defCounts[id] > 1 ? defCounts[id] : 0);
+            }
+
+            HoverDef[] itemDefs = new HoverDef[starts[size]];
+            int[] filled = new int[size];
+
+            for (HoverDef d : defs) {
+                for (int id : d.ItemIDs) {
+                    if (id < 0 || id >= size || templateCounts[id] == 0)
+                        continue;
+
+                    if (defCounts[id] == 1) {
+                        byItemID[id] = d.Templates;
+                        continue;
+                    }
+
+                    itemDefs[starts[id] + filled[id]++] = d;
+                }
+            }
+
+            //Third pass: flatten each distinct list of defs once, and share it between every item with that list
+            Map<List<HoverTemplate[]>, HoverTemplate[]> flattened = new HashMap<>();
+            int items = 0;
+            int arraysBefore = 0;
+            long bytesBefore = 0;
+
+            for (int id = 0; id < size; id++) {
+                if (templateCounts[id] == 0)
+                    continue;
+
+                items++;
+                if (defCounts[id] == 1)
+                    continue;
+
+                //Arrays compare by identity, so lists of the same defs' (or identical defs') templates are equal
+                List<HoverTemplate[]> key = new ArrayList<>(defCounts[id]);
+                for (int i = starts[id]; i < starts[id + 1]; i++) {
+                    key.add(itemDefs[i].Templates);
+                }
+
+                HoverTemplate[] templates = flattened.get(key);
+                if (templates == null) {
+                    templates = new HoverTemplate[templateCounts[id]];
+
+                    int pos = 0;
+                    for (HoverTemplate[] t : key) {
+                        System.arraycopy(t, 0, templates, pos, t.length);
+                        pos += t.length;
+                    }
+
+                    flattened.put(key, templates);
+                }
+
+                byItemID[id] = templates;
+                arraysBefore++;
+                bytesBefore += HoverMemoryReport.arrayBytes(templates.length);
+            }
+
+            return new HoverIndex(byItemID, buildLazyTargets(size, defCounts),
+                    measure(size, items, arraysBefore, bytesBefore, flattened.values()));
+        }
+
+        /**
+         * @return Lazy targets for the defs whose regexes are resolved lazily, or null if there aren't any
+         */
+        private LazyRegexTargets buildLazyTargets(int size, int[] defCounts) {
+            HoverDef[] defArr = defs.toArray(new HoverDef[0]);
+            int[] lazyDefs = new int[defArr.length];
+            int lazyCount = 0;
+
+            for (int i = 0; i < defArr.length; i++) {
+                if (defArr[i].LazyRegex)
+                    lazyDefs[lazyCount++] = i;
+            }
+
+            if (lazyCount == 0)
+                return null;
+
+            //The defs targeting each item eagerly, in load order, so lazily matched defs can be merged in
+            int[] starts = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                starts[id + 1] = starts[id] + defCounts[id];
+            }
+
+            int[] eagerDefs = new int[starts[size]];
+            int[] filled = new int[size];
+
+            for (int i = 0; i < defArr.length; i++) {
+                for (int id : defArr[i].ItemIDs) {
+                    if (id >= 0 && id < size)
+                        eagerDefs[starts[id] + filled[id]++] = i;
+                }
+            }
+
+            return new LazyRegexTargets(defArr, Arrays.copyOf(lazyDefs, lazyCount), starts, eagerDefs);
+        }
+
+        /**
+         * Estimates the memory retained by the index and its defs' templates, and what it would be without any
+         * sharing: if every def had its own templates, and every item targeted by several defs its own array.
+         *
+         * @param flattenedBefore How many flattened arrays there would be without sharing
+         * @param flattenedBytesBefore Their total size
+         */
+        private HoverMemoryReport measure(int size, int items, int flattenedBefore, long flattenedBytesBefore,
+                                          Collection<HoverTemplate[]> flattened) {
+            Set<HoverTemplate> templates = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<HoverTemplate[]> arrays = Collections.newSetFromMap(new IdentityHashMap<>());
+            int templatesBefore = 0;
+            long bytesBefore = HoverMemoryReport.arrayBytes(size) + flattenedBytesBefore;
+            long bytesAfter = HoverMemoryReport.arrayBytes(size);
+
+            for (HoverDef d : defs) {
+                //Each def's `Templates` and `ParsedHoverTexts`
+                long arrayBytes = 2 * HoverMemoryReport.arrayBytes(d.Templates.length);
+                bytesBefore += arrayBytes;
+                if (arrays.add(d.Templates))
+                    bytesAfter += arrayBytes;
+
+                for (HoverTemplate t : d.Templates) {
+                    long templateBytes = t.estimateSize();
+                    templatesBefore++;
+                    bytesBefore += templateBytes;
+                    if (templates.add(t))
+                        bytesAfter += templateBytes;
+                }
+            }
+
+            for (HoverTemplate[] t : flattened) {
+                bytesAfter += HoverMemoryReport.arrayBytes(t.length);
+            }
+
+            return new HoverMemoryReport(defs.size(), items, templatesBefore, templates.size(),
+                    defs.size() + flattenedBefore, arrays.size() + flattened.size(), bytesBefore, bytesAfter);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.geel.customitemhovers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dedupes the templates of freshly loaded HoverDefs against each other and against those already loaded.
+ *
+ * Hover packs repeat the same texts a lot, eg. one def per item with identical hovers. Every hover text is compiled to
+ * one shared template, and defs with identical hovers share a single `Templates` (and `ParsedHoverTexts`) array.
+ * Templates are immutable, and a template's results only depend on its source and condition, so sharing one is safe;
+ * it also lets the tooltip cache share results between them. `HoverIndex.Builder` in turn shares arrays between items
+ * targeted by the same defs.
+ *
+ * Only lives for a single reload, so it never keeps templates which are no longer loaded alive.
+ */
+class HoverInterner {
+    //Keyed by source text, or source and condition text for templates which have a condition (see `key`)
+    private final Map<Object, HoverTemplate> templates = new HashMap<>();
+
+    //Keyed by lists of interned templates, which compare by identity
+    private final Map<List<HoverTemplate>, HoverTemplate[]> arrays = new HashMap<>();
+    private final Map<HoverTemplate[], String[]> texts = new IdentityHashMap<>();
+
+    /**
+     * Makes a def which was interned earlier available to share with.
+     */
+    void add(HoverDef d) {
+        for (HoverTemplate t : d.Templates) {
+            templates.putIfAbsent(key(t), t);
+        }
+
+        arrays.putIfAbsent(Arrays.asList(d.Templates), d.Templates);
+        texts.putIfAbsent(d.Templates, d.ParsedHoverTexts);
+    }
+
+    /**
+     * Replaces `d`'s templates and texts with shared copies, where there are any.
+     */
+    void intern(HoverDef d) {
+        HoverTemplate[] own = d.Templates;
+
+        for (int i = 0; i < own.length; i++) {
+            HoverTemplate shared = templates.putIfAbsent(key(own[i]), own[i]);
+            if (shared != null)
+                own[i] = shared;
+
+            d.ParsedHoverTexts[i] = own[i].getSource();
+        }
+
+        HoverTemplate[] sharedTemplates = arrays.putIfAbsent(Arrays.asList(own), own);
+        if (sharedTemplates == null) {
+            texts.put(own, d.ParsedHoverTexts);
+            return;
+        }
+
+        d.Templates = sharedTemplates;
+        d.ParsedHoverTexts = texts.get(sharedTemplates);
+    }
+
+    /**
+     * @return A key which is equal for templates with the same source and condition
+     */
+    private static Object key(HoverTemplate t) {
+        HoverExpression condition = t.getCondition();
+
+        return condition == null ? t.getSource() : Arrays.asList(t.getSource(), condition.getSource());
+    }
+}
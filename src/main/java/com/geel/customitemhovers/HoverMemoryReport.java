@@ -0,0 +1,110 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Roughly how much memory a hover index and the templates behind it retain, with and without deduplication: identical
+ * hover texts compiled into a single shared template (see `HoverInterner`), and every item targeted by the same defs
+ * sharing a single template array (see `HoverIndex.Builder`).
+ *
+ * Sizes are estimates, assuming a 64 bit JVM with compressed oops and compact strings.
+ */
+@Slf4j
+public class HoverMemoryReport {
+    static final HoverMemoryReport EMPTY = new HoverMemoryReport(0, 0, 0, 0, 0, 0, 0, 0);
+
+    //Number of HoverDefs in the index, and of items with hovers
+    private final int defs;
+    private final int items;
+
+    //Templates, and template arrays (each def's, plus the flattened arrays of items targeted by several defs)
+    private final int templatesBefore;
+    private final int templatesAfter;
+    private final int arraysBefore;
+    private final int arraysAfter;
+
+    private final long bytesBefore;
+    private final long bytesAfter;
+
+    HoverMemoryReport(int defs, int items, int templatesBefore, int templatesAfter, int arraysBefore, int arraysAfter,
+                      long bytesBefore, long bytesAfter) {
+        this.defs = defs;
+        this.items = items;
+        this.templatesBefore = templatesBefore;
+        this.templatesAfter = templatesAfter;
+        this.arraysBefore = arraysBefore;
+        this.arraysAfter = arraysAfter;
+        this.bytesBefore = bytesBefore;
+        this.bytesAfter = bytesAfter;
+    }
+
+    /**
+     * @return Estimated bytes the index would retain if nothing was shared
+     */
+    public long getBytesBefore() {
+        return bytesBefore;
+    }
+
+    /**
+     * @return Estimated bytes the index retains
+     */
+    public long getBytesAfter() {
+        return bytesAfter;
+    }
+
+    /**
+     * Writes this report to the log.
+     */
+    public void dump() {
+        log.info("[CUSTOMITEMHOVERS] Hover index: {} defs, {} items with hovers", defs, items);
+        log.info("[CUSTOMITEMHOVERS] Hover index: {} templates ({} before dedup), {} template arrays ({} before dedup)",
+                templatesAfter, templatesBefore, arraysAfter, arraysBefore);
+        log.info("[CUSTOMITEMHOVERS] Hover index: ~{} retained ({} before dedup)", formatBytes(bytesAfter),
+                formatBytes(bytesBefore));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d defs, %d items, %d/%d templates, %d/%d arrays, ~%s retained (%s before dedup)",
+                defs, items, templatesAfter, templatesBefore, arraysAfter, arraysBefore, formatBytes(bytesAfter),
+                formatBytes(bytesBefore));
+    }
+
+    /**
+     * @return Estimated size of an object with the given size of fields, including its header
+     */
+    static long objectBytes(int fieldBytes) {
+        return align(12 + fieldBytes);
+    }
+
+    /**
+     * @return Estimated size of an array of `length` references
+     */
+    static long arrayBytes(int length) {
+        return align(16 + 4L * length);
+    }
+
+    /**
+     * @return Estimated size of a String, including its backing array
+     */
+    static long stringBytes(String s) {
+        return s == null ? 0 : objectBytes(12) + align(16 + s.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Formats a size compactly, eg `850B`, `12.3KB` or `4.56MB`.
+     */
+    static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + "B";
+
+        if (bytes < 1024 * 1024)
+            return String.format("%.1fKB", bytes / 1024.0);
+
+        return String.format("%.2fMB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,254 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Timings and counters for the plugin's hot paths, for finding out where the time goes when hovers feel slow.
+ * Shown by `CustomItemHoversMetricsOverlay`, and written to the log by the metrics chat command.
+ *
+ * Nothing is collected unless enabled; while disabled, each instrumented call costs a single volatile read. Timings
+ * go into histograms with one bucket per power of two nanoseconds, so recording a sample is a few arithmetic
+ * operations and never allocates.
+ *
+ * Each histogram and counter is written by one thread at a time (the client thread, or whichever thread is
+ * reloading hovers). Readers may see slightly stale values, which is fine for a debug display.
+ */
+@Slf4j
+public class HoverMetrics {
+    private volatile boolean enabled = false;
+
+    public final Histogram render = new Histogram("Overlay render");
+    public final Histogram evaluate = new Histogram("Evaluate hover");
+
+    public final Histogram precompute = new Histogram("Precompute: batch");
+
+    public final Counter repeatHovers = new Counter("Repeat hovers");
+    public final Counter precomputedHovers = new Counter("Precomputed hovers");
+    public final Counter tooltipCacheHits = new Counter("Tooltip cache hits");
+    public final Counter tooltipCacheMisses = new Counter("Tooltip cache misses");
+
+    public final Histogram reloadScan = new Histogram("Reload: scan");
+    public final Histogram reloadParse = new Histogram("Reload: parse");
+    public final Histogram reloadResolve = new Histogram("Reload: resolve");
+    public final Histogram reloadIndex = new Histogram("Reload: index");
+
+    public final Histogram nameMapStart = new Histogram("Name map: load");
+    public final Histogram nameMapSlice = new Histogram("Name map: slice");
+    public final Histogram nameMapBuild = new Histogram("Name map: build");
+
+    private final List<Histogram> histograms = Arrays.asList(render, evaluate, precompute, reloadScan, reloadParse,
+            reloadResolve, reloadIndex, nameMapStart, nameMapSlice, nameMapBuild);
+
+    private final List<Counter> counters = Arrays.asList(repeatHovers, precomputedHovers, tooltipCacheHits,
+            tooltipCacheMisses);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns collection on or off. Turning it on starts over from empty.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled)
+            reset();
+
+        this.enabled = enabled;
+    }
+
+    public void reset() {
+        for (Histogram h : histograms) {
+            h.reset();
+        }
+
+        for (Counter c : counters) {
+            c.reset();
+        }
+    }
+
+    /**
+     * Starts timing something.
+     *
+     * @return A start time to pass to `Histogram.recordSince`, or 0 if collection is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public List<Histogram> getHistograms() {
+        return histograms;
+    }
+
+    public List<Counter> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Fraction of tooltip lookups which were served from the cache, between 0 and 1
+     */
+    public double getTooltipCacheHitRate() {
+        long hits = tooltipCacheHits.get();
+        long total = hits + tooltipCacheMisses.get();
+
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Writes every metric to the log.
+     */
+    public void dump() {
+        if (!enabled)
+            log.info("[CUSTOMITEMHOVERS] Performance metrics are disabled; enable them in the plugin's config");
+
+        for (Histogram h : histograms) {
+            log.info("[CUSTOMITEMHOVERS] {}: {}", h.getName(), h);
+        }
+
+        for (Counter c : counters) {
+            log.info("[CUSTOMITEMHOVERS] {}: {}", c.getName(), c.get());
+        }
+
+        log.info("[CUSTOMITEMHOVERS] Tooltip cache hit rate: {}%", Math.round(getTooltipCacheHitRate() * 1000) / 10.0);
+    }
+
+    /**
+     * Formats a duration compactly, eg `850ns`, `12.3us` or `4.56ms`.
+     */
+    public static String formatNanos(long nanos) {
+        if (nanos < 1_000)
+            return nanos + "ns";
+
+        if (nanos < 1_000_000)
+            return String.format("%.1fus", nanos / 1_000.0);
+
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    /**
+     * A histogram of durations, with one bucket per power of two nanoseconds.
+     */
+    public static class Histogram {
+        private final String name;
+
+        //counts[i] is the number of samples in [2^i, 2^(i+1)) nanoseconds
+        private final long[] counts = new long[64];
+        private long count;
+        private long total;
+        private long max;
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records the time since `start`, as returned by `HoverMetrics.start`. Does nothing if `start` is 0.
+         *
+         * @return The time recorded, or 0 if nothing was
+         */
+        public long recordSince(long start) {
+            if (start == 0)
+                return 0;
+
+            long nanos = System.nanoTime() - start;
+            record(nanos);
+
+            return nanos;
+        }
+
+        public void record(long nanos) {
+            nanos = Math.max(nanos, 1);
+
+            counts[63 - Long.numberOfLeadingZeros(nanos)]++;
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param fraction Between 0 and 1, eg 0.99 for the 99th percentile
+         * @return An upper bound on the given percentile: the top of the bucket it falls in, capped at the maximum
+         */
+        public long getPercentile(double fraction) {
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= rank && seen > 0)
+                    return i >= 62 ? max : Math.min(max, (1L << (i + 1)) - 1);
+            }
+
+            return max;
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            total = 0;
+            max = 0;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0)
+                return "no samples";
+
+            return String.format("n=%d total=%s avg=%s p50<=%s p99<=%s max=%s", count, formatNanos(total),
+                    formatNanos(getMean()), formatNanos(getPercentile(0.5)), formatNanos(getPercentile(0.99)),
+                    formatNanos(max));
+        }
+    }
+
+    /**
+     * A count of events, which only counts while collection is enabled.
+     */
+    public class Counter {
+        private final String name;
+        private long value;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            if (enabled)
+                value++;
+        }
+
+        public long get() {
+            return value;
+        }
+
+        void reset() {
+            value = 0;
+        }
+    }
+}
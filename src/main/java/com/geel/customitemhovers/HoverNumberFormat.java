@@ -0,0 +1,285 @@
+package com.geel.customitemhovers;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Formats numbers straight into a StringBuilder, without allocating.
+ *
+ * Numbers are given as an unscaled `long` plus a scale (the number of decimal places), so decimal multipliers such as
+ * `37.5` can be handled with exact integer arithmetic. The locale's separators are looked up once, when this class is
+ * loaded.
+ *
+ * Formats:
+ * <ul>
+ *   <li>`grouped`: digits in groups, eg `13,000` or `1,312.5`. The default.</li>
+ *   <li>`plain`: no grouping, eg `13000`</li>
+ *   <li>`compact`: a short suffixed form, eg `35K` or `1.2M`</li>
+ *   <li>`fixed0` to `fixed9`: grouped, with exactly that many decimal places, eg `fixed2` gives `1,312.50`</li>
+ * </ul>
+ */
+public class HoverNumberFormat {
+    public static final HoverNumberFormat GROUPED = new HoverNumberFormat("grouped", Style.GROUPED, -1);
+    public static final HoverNumberFormat PLAIN = new HoverNumberFormat("plain", Style.PLAIN, -1);
+    public static final HoverNumberFormat COMPACT = new HoverNumberFormat("compact", Style.COMPACT, -1);
+
+    private static final int MAX_FIXED_DECIMALS = 9;
+    private static final HoverNumberFormat[] FIXED = new HoverNumberFormat[MAX_FIXED_DECIMALS + 1];
+
+    static {
+        for (int i = 0; i < FIXED.length; i++) {
+            FIXED[i] = new HoverNumberFormat("fixed" + i, Style.FIXED, i);
+        }
+    }
+
+    //Powers of ten which fit in a long
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    //Doubles smaller than this are formatted with 6 decimal places, which still fits in a long
+    private static final double DOUBLE_SCALED_LIMIT = 1e12;
+
+    //Suffixes and sizes of the units used by `compact`
+    private static final char[] COMPACT_SUFFIXES = {'K', 'M', 'B', 'T'};
+    private static final long[] COMPACT_UNITS = {1_000L, 1_000_000L, 1_000_000_000L, 1_000_000_000_000L};
+
+    //The default locale's separators, looked up once
+    private static final char GROUPING_SEPARATOR;
+    private static final char DECIMAL_SEPARATOR;
+    private static final int GROUPING_SIZE;
+
+    static {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault());
+        GROUPING_SEPARATOR = symbols.getGroupingSeparator();
+        DECIMAL_SEPARATOR = symbols.getDecimalSeparator();
+
+        NumberFormat format = NumberFormat.getNumberInstance(Locale.getDefault());
+        int groupingSize = format instanceof DecimalFormat ? ((DecimalFormat) format).getGroupingSize() : 3;
+        GROUPING_SIZE = groupingSize > 0 ? groupingSize : 3;
+    }
+
+    private enum Style {
+        GROUPED,
+        PLAIN,
+        COMPACT,
+        FIXED
+    }
+
+    private final String name;
+    private final Style style;
+
+    //Number of decimal places for FIXED
+    private final int decimals;
+
+    private HoverNumberFormat(String name, Style style, int decimals) {
+        this.name = name;
+        this.style = style;
+        this.decimals = decimals;
+    }
+
+    /**
+     * @return The name this format is given by in hover texts, as accepted by `fromName`
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The format with the given name (see the class docs), or null if there's no such format
+     */
+    public static HoverNumberFormat fromName(String name) {
+        switch (name) {
+            case "grouped":
+                return GROUPED;
+            case "plain":
+                return PLAIN;
+            case "compact":
+                return COMPACT;
+        }
+
+        if (name.length() == 6 && name.startsWith("fixed") && Character.isDigit(name.charAt(5)))
+            return FIXED[name.charAt(5) - '0'];
+
+        return null;
+    }
+
+    /**
+     * Appends `unscaled / 10^scale` to `out`.
+     *
+     * @param scale Number of decimal places in `unscaled`, between 0 and 18
+     */
+    public void append(StringBuilder out, long unscaled, int scale) {
+        if (unscaled < 0) {
+            out.append('-');
+
+            //-Long.MIN_VALUE doesn't fit; it's close enough to the next value up
+            unscaled = unscaled == Long.MIN_VALUE ? Long.MAX_VALUE : -unscaled;
+        }
+
+        switch (style) {
+            case GROUPED:
+                appendDecimal(out, unscaled, scale, true);
+                break;
+            case PLAIN:
+                appendDecimal(out, unscaled, scale, false);
+                break;
+            case COMPACT:
+                appendCompact(out, unscaled, scale);
+                break;
+            case FIXED:
+                appendFixed(out, unscaled, scale);
+                break;
+        }
+    }
+
+    /**
+     * Appends a whole number.
+     */
+    public void append(StringBuilder out, long value) {
+        append(out, value, 0);
+    }
+
+    /**
+     * Appends a number which may have a fractional part. It's rounded to 6 decimal places first, which hides floating
+     * point noise such as `0.1 * 3` coming out as `0.30000000000000004`.
+     */
+    public void append(StringBuilder out, double value) {
+        if (Double.isNaN(value)) {
+            value = 0;
+        }
+
+        if (Math.abs(value) < DOUBLE_SCALED_LIMIT) {
+            append(out, Math.round(value * 1e6), 6);
+        } else {
+            //Too big to have meaningful decimal places; the cast saturates at Long.MIN_VALUE/MAX_VALUE
+            append(out, (long) value);
+        }
+    }
+
+    /**
+     * Appends a non-negative decimal, with as many decimal places as it needs (trailing zeros are dropped).
+     */
+    private static void appendDecimal(StringBuilder out, long unscaled, int scale, boolean group) {
+        long divisor = POW10[scale];
+        appendDigits(out, unscaled / divisor, group);
+
+        long fraction = unscaled % divisor;
+        if (fraction == 0)
+            return;
+
+        //Drop trailing zeros
+        int places = scale;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            places--;
+        }
+
+        out.append(DECIMAL_SEPARATOR);
+        appendPadded(out, fraction, places);
+    }
+
+    private void appendFixed(StringBuilder out, long unscaled, int scale) {
+        //Bring the value to exactly `decimals` places, rounding half up
+        if (scale > decimals) {
+            long divisor = POW10[scale - decimals];
+            unscaled = unscaled / divisor + (unscaled % divisor >= divisor / 2 ? 1 : 0);
+        } else if (scale < decimals) {
+            unscaled = multiplySaturated(unscaled, POW10[decimals - scale]);
+        }
+
+        appendDigits(out, unscaled / POW10[decimals], true);
+
+        if (decimals > 0) {
+            out.append(DECIMAL_SEPARATOR);
+            appendPadded(out, unscaled % POW10[decimals], decimals);
+        }
+    }
+
+    private static void appendCompact(StringBuilder out, long unscaled, int scale) {
+        long whole = unscaled / POW10[scale];
+
+        //Small numbers are shown as they are, with at most one decimal place
+        if (whole < COMPACT_UNITS[0]) {
+            appendDigits(out, whole, false);
+
+            long tenths = scale == 0 ? 0 : unscaled % POW10[scale] / POW10[scale - 1];
+            if (tenths != 0)
+                out.append(DECIMAL_SEPARATOR).append((char) ('0' + tenths));
+
+            return;
+        }
+
+        int unit = COMPACT_UNITS.length - 1;
+        while (whole < COMPACT_UNITS[unit])
+            unit--;
+
+        //Truncate rather than round, so eg 999,999 shows as 999K and not 1000K
+        long units = whole / COMPACT_UNITS[unit];
+        appendDigits(out, units, false);
+
+        if (units < 10) {
+            long tenths = whole % COMPACT_UNITS[unit] * 10 / COMPACT_UNITS[unit];
+            if (tenths != 0)
+                out.append(DECIMAL_SEPARATOR).append((char) ('0' + tenths));
+        }
+
+        out.append(COMPACT_SUFFIXES[unit]);
+    }
+
+    /**
+     * Appends the digits of a non-negative number, optionally grouped.
+     */
+    private static void appendDigits(StringBuilder out, long n, boolean group) {
+        int digits = digitCount(n);
+
+        for (int i = digits; i > 0; i--) {
+            out.append((char) ('0' + n / POW10[i - 1] % 10));
+
+            if (group && i > 1 && (i - 1) % GROUPING_SIZE == 0)
+                out.append(GROUPING_SEPARATOR);
+        }
+    }
+
+    /**
+     * Appends the digits of a non-negative number, zero-padded on the left to `width` digits.
+     */
+    private static void appendPadded(StringBuilder out, long n, int width) {
+        for (int i = width; i > 0; i--) {
+            out.append((char) ('0' + n / POW10[i - 1] % 10));
+        }
+    }
+
+    private static int digitCount(long n) {
+        int digits = 1;
+        while (digits < POW10.length && n >= POW10[digits])
+            digits++;
+
+        return digits;
+    }
+
+    /**
+     * @return a * b, or the long closest to it if that doesn't fit in a long
+     */
+    static long multiplySaturated(long a, long b) {
+        if (a == 0 || b == 0)
+            return 0;
+
+        //Checked up front rather than by catching Math.multiplyExact's exception, as this runs for every qtymult on
+        //the hover path. Math.abs(Long.MIN_VALUE) stays negative, so it saturates too, which still gives the exact
+        //answer when it's multiplied by 1.
+        long absA = Math.abs(a);
+        long absB = Math.abs(b);
+        if (absA < 0 || absB < 0 || absA > Long.MAX_VALUE / absB)
+            return (a < 0) == (b < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+
+        return a * b;
+    }
+}
@@ -0,0 +1,640 @@
+package com.geel.customitemhovers;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * A hover text which has been compiled into a list of segments.
+ *
+ * Each segment is either literal text, a variable, or a function call. Compiling happens once, when a hover file is
+ * loaded; evaluating a template for an item then just appends each segment into a buffer, without any scanning of
+ * the text.
+ *
+ * A template may also have a condition, from the `when` clauses of its hover box and def, which is checked (see `test`)
+ * before the template is evaluated; boxes whose condition is false aren't shown, and cost nothing else.
+ */
+public class HoverTemplate {
+    //Dependency flags; a template's result only changes when one of the inputs it depends on changes
+    public static final int DEPENDS_ON_ID = 1;
+    public static final int DEPENDS_ON_QTY = 1 << 1;
+    //The item's quantity totals (see `ItemQuantityTable`); too big for the cache key, so covered by `cacheStamp`
+    public static final int DEPENDS_ON_TOTALS = 1 << 2;
+    //The item's Grand Exchange price (see `ItemPriceTable`); cached results are dropped whenever prices are refreshed
+    public static final int DEPENDS_ON_PRICE = 1 << 3;
+    //The container the item is in; only conditions may read it, as it isn't part of the cache key
+    public static final int DEPENDS_ON_CONTAINER = 1 << 4;
+
+    //Name of the function which has its own segment; other functions are handled by HoverExpression
+    private static final String FUNC_QTYMULT = "qtymult";
+
+    //Kinds of segment, as stored in a hover bundle
+    private static final byte SEGMENT_LITERAL = 0;
+    private static final byte SEGMENT_VARIABLE = 1;
+    private static final byte SEGMENT_QTYMULT = 2;
+    private static final byte SEGMENT_EXPRESSION = 3;
+
+    //Most decimal places a qtymult constant may have
+    private static final int MAX_QTYMULT_SCALE = 9;
+
+    private static final AtomicInteger nextID = new AtomicInteger();
+
+    //Unique ID of this template, used to key cached results
+    private final int id;
+
+    //The text this template was compiled from
+    private final String source;
+
+    private final Segment[] segments;
+
+    //Bitwise OR of the DEPENDS_ON_* flags of all segments
+    private final int dependencies;
+
+    //Must be true for the template to be shown; null if it's always shown
+    private final HoverExpression condition;
+
+    private HoverTemplate(String source, Segment[] segments, HoverExpression condition) {
+        this.id = nextID.getAndIncrement();
+        this.source = source;
+        this.segments = segments;
+
+        int deps = 0;
+        for (Segment s : segments) {
+            deps |= s.dependencies();
+        }
+        this.dependencies = deps;
+
+        //A condition which is always true is left out, so checking it costs nothing
+        this.condition = condition != null && condition.isConstant() && condition.test(null) ? null : condition;
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * @return The text this template was compiled from
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The DEPENDS_ON_* flags for the inputs this template's text and condition read
+     */
+    public int getDependencies() {
+        return dependencies | (condition != null ? condition.getDependencies() : 0);
+    }
+
+    /**
+     * @return The condition this template is shown under, or null if it's always shown
+     */
+    public HoverExpression getCondition() {
+        return condition;
+    }
+
+    /**
+     * @return True if this template should be shown for the item described by `ctx`. Checked before evaluating it.
+     */
+    public boolean test(HoverContext ctx) {
+        return condition == null || condition.test(ctx);
+    }
+
+    /**
+     * @return True if this template evaluates to the same text for every item
+     */
+    public boolean isConstant() {
+        return dependencies == 0;
+    }
+
+    /**
+     * Builds a key which identifies this template's result for an item.
+     *
+     * Only the inputs this template depends on contribute to the key, so eg. a template which only uses `QTY`
+     * produces the same key for every item with the same stack size.
+     */
+    public long cacheKey(HoverContext ctx) {
+        long key = 0;
+
+        if ((dependencies & DEPENDS_ON_ID) != 0)
+            key |= (long) ctx.itemID << 32;
+
+        if ((dependencies & DEPENDS_ON_QTY) != 0)
+            key |= ctx.quantity & 0xFFFFFFFFL;
+
+        return key;
+    }
+
+    /**
+     * @return The stamp to store this template's cached results for an item under, alongside `cacheKey`. Changes
+     * whenever the item's quantity totals do, if this template reads them.
+     */
+    public int cacheStamp(HoverContext ctx) {
+        return (dependencies & DEPENDS_ON_TOTALS) != 0 ? ctx.totalsVersion : 0;
+    }
+
+    /**
+     * Evaluates this template for an item, appending the result to `out`.
+     */
+    public void appendTo(StringBuilder out, HoverContext ctx) {
+        for (Segment s : segments) {
+            s.append(out, ctx);
+        }
+    }
+
+    /**
+     * @return Roughly how many bytes this template retains, including its source text; see `HoverMemoryReport`
+     */
+    long estimateSize() {
+        long size = HoverMemoryReport.objectBytes(20) + HoverMemoryReport.stringBytes(source)
+                + HoverMemoryReport.arrayBytes(segments.length);
+
+        //The condition's closures aren't counted
+        if (condition != null)
+            size += HoverMemoryReport.objectBytes(16) + HoverMemoryReport.stringBytes(condition.getSource());
+
+        for (Segment s : segments) {
+            size += s.estimateSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes this compiled template to a hover bundle; see `HoverBundle`. That's the index of its source, the index of
+     * its condition's text (or -1 if it has none), then its segments.
+     *
+     * @param strings Returns the index of a string in the bundle's string table
+     */
+    void write(DataOutput out, ToIntFunction<String> strings) throws IOException {
+        out.writeInt(strings.applyAsInt(source));
+        out.writeInt(condition != null ? strings.applyAsInt(condition.getSource()) : -1);
+        out.writeInt(segments.length);
+
+        for (Segment s : segments) {
+            s.write(out, strings);
+        }
+    }
+
+    /**
+     * Reads a template written by `write`, without compiling its source text again.
+     *
+     * @param strings The bundle's string table
+     * @throws IllegalArgumentException If the template is malformed or uses an unknown variable
+     */
+    static HoverTemplate read(ByteBuffer buf, String[] strings) {
+        String source = strings[buf.getInt()];
+
+        //Conditions are stored as their text, and parsed again
+        int conditionIndex = buf.getInt();
+        HoverExpression condition = null;
+        if (conditionIndex >= 0) {
+            List<String> problems = new ArrayList<>();
+            condition = HoverExpression.ParseCondition(strings[conditionIndex], problems);
+
+            if (condition == null)
+                throw new IllegalArgumentException(problems.get(0));
+        }
+
+        int segmentCount = buf.getInt();
+
+        //Every segment takes up at least 5 bytes
+        if (segmentCount < 0 || (long) segmentCount * 5 > buf.remaining())
+            throw new IllegalArgumentException("bad segment count " + segmentCount);
+
+        Segment[] segments = new Segment[segmentCount];
+
+        for (int i = 0; i < segments.length; i++) {
+            byte kind = buf.get();
+
+            switch (kind) {
+                case SEGMENT_LITERAL:
+                    segments[i] = new LiteralSegment(strings[buf.getInt()]);
+                    break;
+                case SEGMENT_VARIABLE:
+                    segments[i] = new VariableSegment(variableByName(strings[buf.getInt()]));
+                    break;
+                case SEGMENT_QTYMULT:
+                    int variableIndex = buf.getInt();
+                    HoverVariable variable = variableIndex < 0 ? null : variableByName(strings[variableIndex]);
+                    long mantissa = buf.getLong();
+                    int scale = buf.get();
+                    HoverNumberFormat format = HoverNumberFormat.fromName(strings[buf.getInt()]);
+
+                    if (scale < 0 || scale > MAX_QTYMULT_SCALE || format == null)
+                        throw new IllegalArgumentException("Bad qtymult segment");
+
+                    segments[i] = new QtyMultSegment(variable, mantissa, scale, format);
+                    break;
+                case SEGMENT_EXPRESSION:
+                    //Expressions are stored as their token's text, and parsed again
+                    String token = strings[buf.getInt()];
+                    List<String> problems = new ArrayList<>();
+                    HoverExpression expression = HoverExpression.Parse(token, 0, new int[1], problems);
+
+                    if (expression == null)
+                        throw new IllegalArgumentException(problems.get(0));
+
+                    segments[i] = new ExpressionSegment(expression);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown segment kind " + kind);
+            }
+        }
+
+        return new HoverTemplate(source, segments, condition);
+    }
+
+    private static HoverVariable variableByName(String name) {
+        HoverVariable variable = HoverVariable.fromName(name);
+
+        if (variable == null)
+            throw new IllegalArgumentException("Unknown variable " + name);
+
+        return variable;
+    }
+
+    /**
+     * Compiles a hover text into a template.
+     *
+     * Tokens which aren't a valid variable or expression are kept as literal text, and a description of each one
+     * is added to `problems`.
+     *
+     * @param text     The hover text to compile
+     * @param problems List which any problems found while compiling are added to
+     */
+    public static HoverTemplate Compile(String text, List<String> problems) {
+        return Compile(text, null, problems);
+    }
+
+    /**
+     * Compiles a hover text into a template which is only shown while `condition` is true.
+     *
+     * @param condition A parsed `when` clause (see `HoverExpression.ParseCondition`), or null if it's always shown
+     */
+    public static HoverTemplate Compile(String text, HoverExpression condition, List<String> problems) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int pos = 0;
+        while (pos < text.length()) {
+            int start = text.indexOf("<%", pos);
+
+            if (start < 0) {
+                literal.append(text, pos, text.length());
+                break;
+            }
+
+            literal.append(text, pos, start);
+
+            int[] end = new int[1];
+            Segment token = parseToken(text, start, end, problems);
+
+            //Not a valid token; keep the `<%` as text and carry on after it
+            if (token == null) {
+                literal.append("<%");
+                pos = start + 2;
+                continue;
+            }
+
+            //Constant expressions come back as text; keep it with the surrounding literal text
+            if (token instanceof LiteralSegment) {
+                literal.append(((LiteralSegment) token).text);
+                pos = end[0];
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                segments.add(new LiteralSegment(literal.toString()));
+                literal.setLength(0);
+            }
+
+            segments.add(token);
+            pos = end[0];
+        }
+
+        if (literal.length() > 0)
+            segments.add(new LiteralSegment(literal.toString()));
+
+        return new HoverTemplate(text, segments.toArray(new Segment[0]), condition);
+    }
+
+    /**
+     * Parses the token starting at `start`, which must point at a `<%`.
+     *
+     * @param end Receives the index just past the end of the token
+     * @return The parsed segment, or null if the token is not valid
+     */
+    private static Segment parseToken(String text, int start, int[] end, List<String> problems) {
+        Segment simple = parseSimpleToken(text, start, end);
+        if (simple != null)
+            return checkNotConditional(simple, text, start, end, problems);
+
+        HoverExpression expression = HoverExpression.Parse(text, start, end, problems);
+        if (expression == null)
+            return null;
+
+        if ((expression.getDependencies() & DEPENDS_ON_CONTAINER) != 0)
+            return checkNotConditional(new ExpressionSegment(expression), text, start, end, problems);
+
+        //Expressions which don't read anything, eg <%60 * 60%>, are worked out now
+        if (expression.isConstant()) {
+            StringBuilder value = new StringBuilder();
+            expression.appendTo(value, null);
+
+            return new LiteralSegment(value.toString());
+        }
+
+        return new ExpressionSegment(expression);
+    }
+
+    /**
+     * Rejects a token which reads something only `when` clauses may read, such as `IN_BANK`.
+     *
+     * @return `token`, or null if it reads any such thing
+     */
+    private static Segment checkNotConditional(Segment token, String text, int start, int[] end,
+                                               List<String> problems) {
+        if ((token.dependencies() & DEPENDS_ON_CONTAINER) == 0)
+            return token;
+
+        problems.add("IN_INVENTORY, IN_BANK and IN_VAULT can only be used in `when` clauses, not in `"
+                + text.substring(start, end[0]) + "`");
+        return null;
+    }
+
+    /**
+     * Parses the forms of token which have their own segment: a plain variable, eg <%QTY%>, or a qtymult of a
+     * constant or a variable, eg <%qtymult(650)%> or <%qtymult(<%HIGH_ALCH%>)%>. These are the most common tokens,
+     * and qtymult of a constant is done in exact long arithmetic.
+     *
+     * @param end Receives the index just past the end of the token
+     * @return The parsed segment, or null if the token isn't one of these forms
+     */
+    private static Segment parseSimpleToken(String text, int start, int[] end) {
+        int pos = start + 2;
+        int nameEnd = skipIdentifier(text, pos);
+        String name = text.substring(pos, nameEnd);
+        pos = nameEnd;
+
+        //Variables, eg <%QTY%>
+        if (text.startsWith("%>", pos) && !name.equals(FUNC_QTYMULT)) {
+            HoverVariable variable = HoverVariable.fromName(name);
+            if (variable == null)
+                return null;
+
+            end[0] = pos + 2;
+            return new VariableSegment(variable);
+        }
+
+        if (!name.equals(FUNC_QTYMULT))
+            return null;
+
+        //<%qtymult%> on its own multiplies by 1
+        if (text.startsWith("%>", pos)) {
+            end[0] = pos + 2;
+            return new QtyMultSegment(null, 1, 0, HoverNumberFormat.GROUPED);
+        }
+
+        if (!text.startsWith("(", pos))
+            return null;
+        pos++;
+
+        HoverVariable argVariable = null;
+        long argMantissa = 0;
+        int argScale = 0;
+
+        if (text.startsWith("<%", pos) || (pos < text.length() && Character.isUpperCase(text.charAt(pos)))) {
+            //Argument is a variable, eg <%qtymult(<%HIGH_ALCH%>)%> or <%qtymult(HIGH_ALCH)%>
+            boolean bracketed = text.startsWith("<%", pos);
+            int argStart = bracketed ? pos + 2 : pos;
+            int argEnd = skipIdentifier(text, argStart);
+            argVariable = HoverVariable.fromName(text.substring(argStart, argEnd));
+
+            if (argVariable == null || (bracketed && !text.startsWith("%>", argEnd)))
+                return null;
+
+            pos = bracketed ? argEnd + 2 : argEnd;
+        } else {
+            //Argument is a number, eg 650 or 37.5. It's kept as digits plus a scale, so it's multiplied exactly.
+            int argEnd = pos;
+            int point = -1;
+            while (argEnd < text.length()
+                    && (Character.isDigit(text.charAt(argEnd)) || (text.charAt(argEnd) == '.' && point < 0))) {
+                if (text.charAt(argEnd) == '.')
+                    point = argEnd;
+                argEnd++;
+            }
+
+            String digits = point < 0
+                    ? text.substring(pos, argEnd)
+                    : text.substring(pos, point) + text.substring(point + 1, argEnd);
+            argScale = point < 0 ? 0 : argEnd - point - 1;
+
+            if (argScale > MAX_QTYMULT_SCALE)
+                return null;
+
+            try {
+                argMantissa = Long.parseLong(digits);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            pos = argEnd;
+        }
+
+        HoverNumberFormat format = HoverNumberFormat.GROUPED;
+
+        //Optional output format, eg <%qtymult(650,compact)%>
+        if (text.startsWith(",", pos)) {
+            pos++;
+            while (pos < text.length() && text.charAt(pos) == ' ')
+                pos++;
+
+            int formatEnd = skipIdentifier(text, pos);
+            format = HoverNumberFormat.fromName(text.substring(pos, formatEnd));
+
+            if (format == null)
+                return null;
+
+            pos = formatEnd;
+        }
+
+        if (!text.startsWith(")%>", pos))
+            return null;
+
+        end[0] = pos + 3;
+        return new QtyMultSegment(argVariable, argMantissa, argScale, format);
+    }
+
+    private static int skipIdentifier(String text, int pos) {
+        while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_'))
+            pos++;
+
+        return pos;
+    }
+
+    /**
+     * A single piece of a compiled template.
+     */
+    private static abstract class Segment {
+        abstract void append(StringBuilder out, HoverContext ctx);
+
+        /**
+         * Writes this segment's kind and operands; see `HoverTemplate.read`.
+         */
+        abstract void write(DataOutput out, ToIntFunction<String> strings) throws IOException;
+
+        /**
+         * @return The DEPENDS_ON_* flags for the inputs this segment reads
+         */
+        int dependencies() {
+            return 0;
+        }
+
+        /**
+         * @return Roughly how many bytes this segment retains
+         */
+        long estimateSize() {
+            return HoverMemoryReport.objectBytes(4);
+        }
+    }
+
+    private static class LiteralSegment extends Segment {
+        private final String text;
+
+        LiteralSegment(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void append(StringBuilder out, HoverContext ctx) {
+            out.append(text);
+        }
+
+        @Override
+        void write(DataOutput out, ToIntFunction<String> strings) throws IOException {
+            out.writeByte(SEGMENT_LITERAL);
+            out.writeInt(strings.applyAsInt(text));
+        }
+
+        @Override
+        long estimateSize() {
+            return super.estimateSize() + HoverMemoryReport.stringBytes(text);
+        }
+    }
+
+    private static class VariableSegment extends Segment {
+        private final HoverVariable variable;
+
+        VariableSegment(HoverVariable variable) {
+            this.variable = variable;
+        }
+
+        @Override
+        void append(StringBuilder out, HoverContext ctx) {
+            out.append(variable.get(ctx));
+        }
+
+        @Override
+        void write(DataOutput out, ToIntFunction<String> strings) throws IOException {
+            out.writeByte(SEGMENT_VARIABLE);
+            out.writeInt(strings.applyAsInt(variable.name()));
+        }
+
+        @Override
+        int dependencies() {
+            return variable.getDependencies();
+        }
+    }
+
+    /**
+     * <%qtymult(x)%> returns (stack_size * x)
+     *
+     * `x` may be a variable, a whole number or a decimal. An optional second argument picks the output format, eg
+     * <%qtymult(650,compact)%>; see `HoverNumberFormat`.
+     */
+    private static class QtyMultSegment extends Segment {
+        //If non-null, the multiplier is read from this variable instead of `mantissa`
+        private final HoverVariable variable;
+
+        //A constant multiplier is `mantissa / 10^scale`
+        private final long mantissa;
+        private final int scale;
+
+        private final HoverNumberFormat format;
+
+        QtyMultSegment(HoverVariable variable, long mantissa, int scale, HoverNumberFormat format) {
+            this.variable = variable;
+            this.mantissa = mantissa;
+            this.scale = scale;
+            this.format = format;
+        }
+
+        @Override
+        void append(StringBuilder out, HoverContext ctx) {
+            //In long, so eg 20,000 heads * 650 XP doesn't overflow
+            if (variable != null) {
+                format.append(out, HoverNumberFormat.multiplySaturated(ctx.quantity, variable.get(ctx)));
+            } else {
+                format.append(out, HoverNumberFormat.multiplySaturated(ctx.quantity, mantissa), scale);
+            }
+        }
+
+        @Override
+        void write(DataOutput out, ToIntFunction<String> strings) throws IOException {
+            out.writeByte(SEGMENT_QTYMULT);
+            out.writeInt(variable != null ? strings.applyAsInt(variable.name()) : -1);
+            out.writeLong(mantissa);
+            out.writeByte(scale);
+            out.writeInt(strings.applyAsInt(format.getName()));
+        }
+
+        @Override
+        int dependencies() {
+            return DEPENDS_ON_QTY | (variable != null ? variable.getDependencies() : 0);
+        }
+
+        @Override
+        long estimateSize() {
+            return HoverMemoryReport.objectBytes(20);
+        }
+    }
+
+    /**
+     * Any other expression, eg <%VALUE - HIGH_ALCH%>; see `HoverExpression`.
+     */
+    private static class ExpressionSegment extends Segment {
+        private final HoverExpression expression;
+
+        ExpressionSegment(HoverExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        void append(StringBuilder out, HoverContext ctx) {
+            expression.appendTo(out, ctx);
+        }
+
+        @Override
+        void write(DataOutput out, ToIntFunction<String> strings) throws IOException {
+            out.writeByte(SEGMENT_EXPRESSION);
+            out.writeInt(strings.applyAsInt(expression.getSource()));
+        }
+
+        @Override
+        int dependencies() {
+            return expression.getDependencies();
+        }
+
+        @Override
+        long estimateSize() {
+            //Its source, plus a compiled tree assumed to be about twice that size
+            return super.estimateSize() + 3 * HoverMemoryReport.stringBytes(expression.getSource());
+        }
+    }
+}
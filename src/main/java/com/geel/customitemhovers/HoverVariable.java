@@ -0,0 +1,91 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.InventoryID;
+
+/**
+ * All variables which may be used in a hover text, eg `<%QTY%>`.
+ */
+public enum HoverVariable {
+    //<%ID%> is just the numeric ID of the item
+    ID(HoverTemplate.DEPENDS_ON_ID),
+    //<%QTY%> is the number of items in the stack
+    QTY(HoverTemplate.DEPENDS_ON_QTY),
+    //<%VALUE%> is the clientside price of the item
+    VALUE(HoverTemplate.DEPENDS_ON_ID),
+    //<%HIGH_ALCH%> is the high-alch price of the item
+    HIGH_ALCH(HoverTemplate.DEPENDS_ON_ID),
+    //<%INV_QTY%>, <%BANK_QTY%> and <%VAULT_QTY%> are how many of the item are in the inventory, bank and seed vault
+    INV_QTY(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_TOTALS),
+    BANK_QTY(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_TOTALS),
+    VAULT_QTY(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_TOTALS),
+    //<%TOTAL_QTY%> is how many of the item are in all three
+    TOTAL_QTY(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_TOTALS),
+    //<%GE_PRICE%> is the Grand Exchange price of the item
+    GE_PRICE(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_PRICE),
+    //<%GE_TOTAL%> is the Grand Exchange price of the whole stack
+    GE_TOTAL(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_QTY | HoverTemplate.DEPENDS_ON_PRICE),
+    //<%IN_INVENTORY%>, <%IN_BANK%> and <%IN_VAULT%> are 1 if the hovered item is in that container, and 0 otherwise.
+    //Only allowed in `when` clauses
+    IN_INVENTORY(HoverTemplate.DEPENDS_ON_CONTAINER),
+    IN_BANK(HoverTemplate.DEPENDS_ON_CONTAINER),
+    IN_VAULT(HoverTemplate.DEPENDS_ON_CONTAINER);
+
+    //Which of the `HoverTemplate.DEPENDS_ON_*` inputs this variable's value is derived from
+    private final int dependencies;
+
+    HoverVariable(int dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    public int getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return The value of this variable for the item described by `ctx`
+     */
+    public long get(HoverContext ctx) {
+        switch (this) {
+            case ID:
+                return ctx.itemID;
+            case QTY:
+                return ctx.quantity;
+            case VALUE:
+                return ctx.price;
+            case HIGH_ALCH:
+                return ctx.highAlch;
+            case INV_QTY:
+                return ctx.inventoryQuantity;
+            case BANK_QTY:
+                return ctx.bankQuantity;
+            case VAULT_QTY:
+                return ctx.vaultQuantity;
+            case TOTAL_QTY:
+                return (long) ctx.inventoryQuantity + ctx.bankQuantity + ctx.vaultQuantity;
+            case GE_PRICE:
+                return ctx.gePrice;
+            case GE_TOTAL:
+                return (long) ctx.gePrice * ctx.quantity;
+            case IN_INVENTORY:
+                return ctx.containerId == InventoryID.INVENTORY.getId() ? 1 : 0;
+            case IN_BANK:
+                return ctx.containerId == InventoryID.BANK.getId() ? 1 : 0;
+            case IN_VAULT:
+                return ctx.containerId == InventoryID.SEED_VAULT.getId() ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return The variable with the given name, or null if there's no such variable
+     */
+    public static HoverVariable fromName(String name) {
+        for (HoverVariable v : values()) {
+            if (v.name().equals(name))
+                return v;
+        }
+
+        return null;
+    }
+}
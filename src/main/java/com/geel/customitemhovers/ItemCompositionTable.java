@@ -0,0 +1,103 @@
+package com.geel.customitemhovers;
+
+import java.util.Arrays;
+
+/**
+ * Primitive lookup tables of what hovers need from `ItemManager`: raw item ID -> canonical ID, and canonical ID ->
+ * price and high-alch price. Built alongside the item name map (see `ItemNameMap.Builder`) and persisted with it (see
+ * `ItemNameMapCache`), so reading them is an array access, on any thread.
+ *
+ * Immutable once built.
+ */
+public class ItemCompositionTable {
+    public static final ItemCompositionTable EMPTY = new ItemCompositionTable(new int[0], new int[0], new int[0]);
+
+    //Stored for items which weren't seen while building the table
+    static final int UNKNOWN = -1;
+
+    //By raw ID
+    private final int[] canonicalIDs;
+
+    //By canonical ID
+    private final int[] prices;
+    private final int[] highAlchs;
+
+    private ItemCompositionTable(int[] canonicalIDs, int[] prices, int[] highAlchs) {
+        this.canonicalIDs = canonicalIDs;
+        this.prices = prices;
+        this.highAlchs = highAlchs;
+    }
+
+    /**
+     * @return Number of raw item IDs in the table
+     */
+    public int size() {
+        return canonicalIDs.length;
+    }
+
+    /**
+     * @return The item's canonical ID, or `UNKNOWN` if it isn't in the table
+     */
+    public int canonicalize(int itemID) {
+        return itemID >= 0 && itemID < canonicalIDs.length ? canonicalIDs[itemID] : UNKNOWN;
+    }
+
+    /**
+     * @return The item's clientside price, or `UNKNOWN` if it isn't in the table
+     */
+    public int getPrice(int canonicalID) {
+        return canonicalID >= 0 && canonicalID < prices.length ? prices[canonicalID] : UNKNOWN;
+    }
+
+    /**
+     * @return The item's high-alch price, or `UNKNOWN` if it isn't in the table
+     */
+    public int getHighAlch(int canonicalID) {
+        return canonicalID >= 0 && canonicalID < highAlchs.length ? highAlchs[canonicalID] : UNKNOWN;
+    }
+
+    /**
+     * Fills in a table one item at a time.
+     */
+    public static class Builder {
+        private final int[] canonicalIDs;
+        private final int[] prices;
+        private final int[] highAlchs;
+
+        /**
+         * @param itemCount Number of raw item IDs; canonical IDs are expected to be below this too
+         */
+        public Builder(int itemCount) {
+            canonicalIDs = new int[itemCount];
+            prices = new int[itemCount];
+            highAlchs = new int[itemCount];
+
+            Arrays.fill(canonicalIDs, UNKNOWN);
+            Arrays.fill(prices, UNKNOWN);
+            Arrays.fill(highAlchs, UNKNOWN);
+        }
+
+        public Builder setCanonicalID(int itemID, int canonicalID) {
+            if (itemID >= 0 && itemID < canonicalIDs.length)
+                canonicalIDs[itemID] = canonicalID;
+
+            return this;
+        }
+
+        public Builder setComposition(int canonicalID, int price, int highAlch) {
+            if (canonicalID >= 0 && canonicalID < prices.length) {
+                prices[canonicalID] = price;
+                highAlchs[canonicalID] = highAlch;
+            }
+
+            return this;
+        }
+
+        /**
+         * The builder must not be used afterwards.
+         */
+        public ItemCompositionTable build() {
+            return new ItemCompositionTable(canonicalIDs, prices, highAlchs);
+        }
+    }
+}
@@ -7,100 +7,310 @@ import net.runelite.api.ItemID;
 import net.runelite.client.game.ItemManager;
 
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
- * Stores an (item name -> [item ids]) and (item id -> item name) mapping for all items in game
+ * Stores an (item name -> [item ids]) and (item id -> item name) mapping for all items in game, and the composition
+ * fields hovers read (see `ItemCompositionTable`)
  */
 @Slf4j
 public class ItemNameMap {
-    //Map of (item name -> [item id, ...])
-    private final static Map<String, ArrayList<Integer>> itemNameToIDs = new HashMap<>();
+    /**
+     * Whether the map can be used yet
+     */
+    public enum State {
+        NOT_READY,
+        BUILDING,
+        READY
+    }
+
+    //Map of (item name -> [item id, ...]). Replaced whole once the map is prepared, and never modified afterwards.
+    private static volatile Map<String, ArrayList<Integer>> itemNameToIDs = new HashMap<>();
+
+    //The same mapping as parallel arrays, for bulk scans over every name. Replaced whole once the map is prepared.
+    private static volatile String[] names = new String[0];
+    private static volatile int[][] nameIDs = new int[0][];
+
+    //Name index of each item ID, or -1 if it has no name; see `GetNameIndex`
+    private static volatile int[] nameIndices = new int[0];
+
+    //Canonical IDs, prices and high-alch prices of every item. Replaced whole once the map is prepared.
+    private static volatile ItemCompositionTable compositions = ItemCompositionTable.EMPTY;
+
+    //Fingerprint of the item catalog the current map was built from; see `ItemNameMapCache.Fingerprint`
+    private static volatile long fingerprint;
+
+    private static volatile State state = State.NOT_READY;
+
+    public static State GetState() {
+        return state;
+    }
+
+    public static boolean IsReady() {
+        return state == State.READY;
+    }
 
     /**
-     * Prepare map of item names to IDs
+     * @return Fingerprint of the item catalog the map was built from, once it's ready
+     */
+    public static long GetFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Starts preparing the map of item names to IDs.
+     *
+     * The map is loaded from `cacheFile` if that was written for the same item catalog. Otherwise, a Builder is
+     * returned, which builds the map from item compositions a slice at a time; see `Builder.step`.
+     *
+     * Must be called on the client thread.
      *
      * @param client      Reference to RL Client; used to fetch total number of items
      * @param itemManager Reference to ItemManager; used to fetch item compositions
+     * @param cacheFile   Where the map is persisted between sessions
+     * @return A builder which must be stepped until done, or null if the map is already ready
      */
-    public static void PrepareMap(Client client, ItemManager itemManager) {
+    public static Builder StartBuild(Client client, ItemManager itemManager, Path cacheFile) {
         //Don't do anything if already prepared
-        if (itemNameToIDs.size() > 0)
-            return;
+        if (IsReady())
+            return null;
 
-        //Clear just to be safe
-        itemNameToIDs.clear();
+        int itemCount = client.getItemCount();
+        long fingerprint = ItemNameMapCache.Fingerprint(client, itemManager);
 
-        Set<Integer> processedIDs = new HashSet<>();
+        ItemNameMapCache.Contents cached = ItemNameMapCache.Load(cacheFile, itemCount, fingerprint);
+        if (cached != null) {
+            log.debug("[CUSTOMITEMHOVERS] Loaded item name map from {}", cacheFile);
+            install(cached.names, cached.compositions, fingerprint);
+            return null;
+        }
+
+        state = State.BUILDING;
+        return new Builder(itemManager, cacheFile, itemCount, fingerprint);
+    }
+
+    /**
+     * Prepares the map from `cacheFile` alone, whichever item catalog it was written for. For offline tools, which
+     * have no client to build the map from; see `HoverBundleCompiler`.
+     *
+     * @return True if the map is ready
+     */
+    public static boolean PrepareMapFromCache(Path cacheFile) {
+        ItemNameMapCache.Contents cached = ItemNameMapCache.LoadAny(cacheFile);
 
-        for (int i = 0; i < client.getItemCount(); i++) {
+        if (cached == null)
+            return false;
+
+        install(cached.names, cached.compositions, cached.fingerprint);
+        return true;
+    }
+
+    /**
+     * Builds the map from the composition of every item, in resumable slices.
+     */
+    public static class Builder {
+        //How many items are processed between checks of the clock
+        private static final int ITEMS_PER_CLOCK_CHECK = 64;
+
+        private final ItemManager itemManager;
+        private final Path cacheFile;
+        private final int itemCount;
+        private final long fingerprint;
+
+        private final Map<String, ArrayList<Integer>> map = new HashMap<>();
+        private final ItemCompositionTable.Builder compositionsBuilder;
+        private ItemCompositionTable builtCompositions;
+        private final BitSet processedIDs = new BitSet();
+
+        //Next raw item ID to process
+        private int next = 0;
+
+        private Builder(ItemManager itemManager, Path cacheFile, int itemCount, long fingerprint) {
+            this.itemManager = itemManager;
+            this.cacheFile = cacheFile;
+            this.itemCount = itemCount;
+            this.fingerprint = fingerprint;
+            this.compositionsBuilder = new ItemCompositionTable.Builder(itemCount);
+        }
+
+        /**
+         * Processes items until the map is complete or `budgetNanos` has elapsed. Once the map is complete, it's
+         * installed and the state becomes READY.
+         *
+         * Must be called on the client thread.
+         *
+         * @return True once the map is complete
+         */
+        public boolean step(long budgetNanos) {
+            long deadline = System.nanoTime() + budgetNanos;
+
+            while (next < itemCount) {
+                addItem(next++);
+
+                if (next % ITEMS_PER_CLOCK_CHECK == 0 && System.nanoTime() - deadline > 0)
+                    return false;
+            }
+
+            if (builtCompositions == null)
+                builtCompositions = compositionsBuilder.build();
+
+            install(map, builtCompositions, fingerprint);
+            return true;
+        }
+
+        /**
+         * @return Fraction of items processed so far, between 0 and 1
+         */
+        public double getProgress() {
+            return itemCount == 0 ? 1 : (double) next / itemCount;
+        }
+
+        /**
+         * Writes the completed map to the cache file. Doesn't need the client thread.
+         */
+        public void saveCache() {
+            ItemNameMapCache.Save(cacheFile, itemCount, fingerprint, map, builtCompositions);
+        }
+
+        private void addItem(int i) {
             int canonicalID = itemManager.canonicalize(i);
+            compositionsBuilder.setCanonicalID(i, canonicalID);
 
-            if(processedIDs.contains(canonicalID))
-                continue;
+            if (processedIDs.get(canonicalID))
+                return;
 
-            processedIDs.add(canonicalID);
+            processedIDs.set(canonicalID);
 
             ItemComposition comp = itemManager.getItemComposition(canonicalID);
+            compositionsBuilder.setComposition(canonicalID, comp.getPrice(), comp.getHaPrice());
             String itemName = comp.getName();
 
-            if(itemName.toLowerCase().equals("null")) {
+            if (itemName.toLowerCase().equals("null")) {
                 log.error("Item ID " + canonicalID + " has a null name");
-                continue;
+                return;
             }
 
             //Create list for item name if it doesn't exist
-            if (!itemNameToIDs.containsKey(itemName)) {
-                itemNameToIDs.put(itemName, new ArrayList<>(1));
+            if (!map.containsKey(itemName)) {
+                map.put(itemName, new ArrayList<>(1));
             }
 
-            itemNameToIDs.get(itemName).add(canonicalID);
+            map.get(itemName).add(canonicalID);
         }
     }
 
     /**
-     * Returns all item IDs which correspond to the given string name
-     *
-     * @param itemName The name of an entry in the `ItemID` class, eg, "PINEAPPLE_SAPLING"
+     * Makes `map` the current map of item names to IDs.
      */
-    public static int[] GetItemIDs(String itemName) {
-        ArrayList<Integer> itemIDs = itemNameToIDs.getOrDefault(itemName, new ArrayList<>(0));
+    private static void install(Map<String, ArrayList<Integer>> map, ItemCompositionTable mapCompositions,
+                                long mapFingerprint) {
+        itemNameToIDs = map;
+        compositions = mapCompositions;
+        fingerprint = mapFingerprint;
+        prepareNameArrays();
+        state = State.READY;
+    }
 
-        //The lack of a sane toArray() function is going to kill me
-        int[] ret = new int[itemIDs.size()];
+    /**
+     * Fills in `names` and `nameIDs` from `itemNameToIDs`
+     */
+    private static void prepareNameArrays() {
+        String[] newNames = new String[itemNameToIDs.size()];
+        int[][] newNameIDs = new int[newNames.length][];
+        int maxID = -1;
 
-        for (int i = 0; i < itemIDs.size(); i++) {
-            ret[i] = itemIDs.get(i);
+        int i = 0;
+        for (Map.Entry<String, ArrayList<Integer>> entry : itemNameToIDs.entrySet()) {
+            newNames[i] = entry.getKey();
+            newNameIDs[i] = GetItemIDs(entry.getKey());
+
+            for (int id : newNameIDs[i]) {
+                maxID = Math.max(maxID, id);
+            }
+
+            i++;
         }
 
-        return ret;
+        int[] newNameIndices = new int[maxID + 1];
+        Arrays.fill(newNameIndices, -1);
+
+        for (i = 0; i < newNameIDs.length; i++) {
+            for (int id : newNameIDs[i]) {
+                newNameIndices[id] = i;
+            }
+        }
+
+        nameIndices = newNameIndices;
+        nameIDs = newNameIDs;
+        names = newNames;
     }
 
+    /**
+     * @return The item's canonical ID, from the composition table if it's there, or else from `itemManager`, in which
+     * case this must be called on the client thread
+     */
+    public static int Canonicalize(ItemManager itemManager, int itemID) {
+        int canonicalID = compositions.canonicalize(itemID);
+        return canonicalID != ItemCompositionTable.UNKNOWN ? canonicalID : itemManager.canonicalize(itemID);
+    }
 
     /**
-     * Returns all IDs of items whose names match the given regex
+     * @return The item's clientside price; see `Canonicalize`
+     */
+    public static int GetPrice(ItemManager itemManager, int canonicalID) {
+        int price = compositions.getPrice(canonicalID);
+        return price != ItemCompositionTable.UNKNOWN ? price : itemManager.getItemComposition(canonicalID).getPrice();
+    }
+
+    /**
+     * @return The item's high-alch price; see `Canonicalize`
+     */
+    public static int GetHighAlch(ItemManager itemManager, int canonicalID) {
+        int highAlch = compositions.getHighAlch(canonicalID);
+        return highAlch != ItemCompositionTable.UNKNOWN ? highAlch
+                : itemManager.getItemComposition(canonicalID).getHaPrice();
+    }
+
+    /**
+     * Returns every distinct item name. A name's position in this array is its "name index".
      *
-     * @param itemNameRegex A regex string to match item names against
-     * @return A list of all item IDs whose names match the given regex
+     * The returned array must not be modified.
      */
-    public static ArrayList<Integer> GetItemIDsRegex(String itemNameRegex) {
-        ArrayList<Integer> ret = new ArrayList<>(1);
-        Pattern finder = Pattern.compile(itemNameRegex);
+    public static String[] GetNames() {
+        return names;
+    }
 
-        if (finder == null) {
-            return ret;
-        }
+    /**
+     * @return The name index (see `GetNames()`) of a canonical item ID, or -1 if it has no name
+     */
+    public static int GetNameIndex(int itemID) {
+        int[] indices = nameIndices;
+        return itemID >= 0 && itemID < indices.length ? indices[itemID] : -1;
+    }
 
-        for (String entry : itemNameToIDs.keySet()) {
-            if (!finder.matcher(entry).matches())
-                continue;
+    /**
+     * Returns all item IDs with the name at the given name index (see `GetNames()`).
+     *
+     * The returned array must not be modified.
+     */
+    public static int[] GetItemIDsAt(int nameIndex) {
+        return nameIDs[nameIndex];
+    }
 
-            for (int itemID : itemNameToIDs.get(entry)) {
-                //O(n^2), sue me (don't)
-                if (!ret.contains(itemID))
-                    ret.add(itemID);
-            }
+    /**
+     * Returns all item IDs which correspond to the given string name
+     *
+     * @param itemName The name of an entry in the `ItemID` class, eg, "PINEAPPLE_SAPLING"
+     */
+    public static int[] GetItemIDs(String itemName) {
+        ArrayList<Integer> itemIDs = itemNameToIDs.getOrDefault(itemName, new ArrayList<>(0));
+
+        //The lack of a sane toArray() function is going to kill me
+        int[] ret = new int[itemIDs.size()];
+
+        for (int i = 0; i < itemIDs.size(); i++) {
+            ret[i] = itemIDs.get(i);
         }
 
         return ret;
@@ -0,0 +1,264 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.ItemComposition;
+import net.runelite.client.game.ItemManager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the (item name -> [item ids]) table built by `ItemNameMap`, and the `ItemCompositionTable` built alongside
+ * it, to disk, so they only have to be rebuilt from item compositions when the game's item catalog actually changes.
+ *
+ * The file is keyed by the item count plus a fingerprint of a sample of the catalog (see `Fingerprint`); if either
+ * differs from the running client's, the file is ignored and rebuilt.
+ *
+ * Format (big-endian):
+ * <pre>
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   item count
+ *   long  fingerprint
+ *   int   number of names
+ *   per name:
+ *     int    length of UTF-8 name
+ *     byte[] UTF-8 name
+ *     int    number of IDs
+ *     int[]  IDs
+ *   int   composition table size (0 if there isn't one)
+ *   int[] canonical ID of each raw ID
+ *   int[] price of each canonical ID
+ *   int[] high-alch price of each canonical ID
+ * </pre>
+ */
+@Slf4j
+public class ItemNameMapCache {
+    private static final int MAGIC = 0x4349484E; //"CIHN"
+    private static final int VERSION = 2;
+
+    //MAGIC, VERSION, item count, fingerprint
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    //Every FINGERPRINT_STRIDE'th item is sampled into the fingerprint
+    private static final int FINGERPRINT_STRIDE = 97;
+
+    /**
+     * What a cache file holds.
+     */
+    public static class Contents {
+        public final Map<String, ArrayList<Integer>> names;
+        public final ItemCompositionTable compositions;
+
+        //The fingerprint the file was written with
+        public final long fingerprint;
+
+        Contents(Map<String, ArrayList<Integer>> names, ItemCompositionTable compositions, long fingerprint) {
+            this.names = names;
+            this.compositions = compositions;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Computes a cheap fingerprint of the item catalog, from the canonical ID, name and price of a sample of items.
+     *
+     * Must be called on the client thread.
+     */
+    public static long Fingerprint(Client client, ItemManager itemManager) {
+        int itemCount = client.getItemCount();
+        long hash = 0xCBF29CE484222325L ^ itemCount;
+
+        for (int i = 0; i < itemCount; i += FINGERPRINT_STRIDE) {
+            int canonicalID = itemManager.canonicalize(i);
+            ItemComposition comp = itemManager.getItemComposition(canonicalID);
+
+            hash = (hash ^ canonicalID) * 0x100000001B3L;
+            hash = (hash ^ comp.getName().hashCode()) * 0x100000001B3L;
+            hash = (hash ^ comp.getPrice()) * 0x100000001B3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Loads the cache file, if it exists and matches the given catalog.
+     *
+     * @return The file's contents, or null if it's missing, stale or corrupt
+     */
+    public static Contents Load(Path file, int itemCount, long fingerprint) {
+        return read(file, itemCount, fingerprint);
+    }
+
+    /**
+     * Loads the cache file, whichever catalog it was written for. Used by offline tools, which don't have a client to
+     * compare the catalog against.
+     *
+     * @return The file's contents, or null if it's missing or corrupt
+     */
+    public static Contents LoadAny(Path file) {
+        return read(file, -1, 0);
+    }
+
+    /**
+     * @param itemCount The expected item count, or -1 to accept any catalog
+     */
+    private static Contents read(Path file, int itemCount, long fingerprint) {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //Check the header with a plain read first; a stale file is never mapped, so it can be replaced right away
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0)
+                    break;
+            }
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION)
+                return null;
+
+            int fileItemCount = header.getInt();
+            long fileFingerprint = header.getLong();
+
+            if (itemCount >= 0 && (fileItemCount != itemCount || fileFingerprint != fingerprint))
+                return null;
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE);
+
+            int nameCount = readCount(buf, 8);
+            List<String> names = new ArrayList<>(nameCount);
+            List<ArrayList<Integer>> ids = new ArrayList<>(nameCount);
+            byte[] nameBytes = new byte[64];
+
+            for (int i = 0; i < nameCount; i++) {
+                int nameLength = readCount(buf, 1);
+                if (nameBytes.length < nameLength)
+                    nameBytes = new byte[nameLength];
+
+                buf.get(nameBytes, 0, nameLength);
+                names.add(new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8));
+
+                int idCount = readCount(buf, 4);
+                ArrayList<Integer> nameIDs = new ArrayList<>(idCount);
+                for (int j = 0; j < idCount; j++) {
+                    nameIDs.add(buf.getInt());
+                }
+                ids.add(nameIDs);
+            }
+
+            int tableSize = readCount(buf, 12);
+            ItemCompositionTable.Builder compositions = new ItemCompositionTable.Builder(tableSize);
+            IntBuffer table = buf.asIntBuffer();
+
+            for (int i = 0; i < tableSize; i++) {
+                compositions.setCanonicalID(i, table.get(i));
+            }
+
+            for (int i = 0; i < tableSize; i++) {
+                compositions.setComposition(i, table.get(tableSize + i), table.get(2 * tableSize + i));
+            }
+
+            Map<String, ArrayList<Integer>> map = new HashMap<>(nameCount * 2);
+            for (int i = 0; i < nameCount; i++) {
+                map.put(names.get(i), ids.get(i));
+            }
+
+            return new Contents(map, compositions.build(), fileFingerprint);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            log.warn("[CUSTOMITEMHOVERS] Ignoring unreadable item name cache: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Reads a count of elements, each at least `minElementSize` bytes long, so that a corrupt count is caught before
+     * anything is allocated for it.
+     */
+    private static int readCount(ByteBuffer buf, int minElementSize) {
+        int count = buf.getInt();
+
+        if (count < 0 || (long) count * minElementSize > buf.remaining())
+            throw new IllegalArgumentException("bad element count " + count);
+
+        return count;
+    }
+
+    /**
+     * Writes `map` to the cache file, without a composition table. Used by tools which only have item names.
+     */
+    public static void Save(Path file, int itemCount, long fingerprint, Map<String, ArrayList<Integer>> map) {
+        Save(file, itemCount, fingerprint, map, ItemCompositionTable.EMPTY);
+    }
+
+    /**
+     * Writes `map` and `compositions` to the cache file. The file is replaced atomically, so a reader never sees a
+     * partial file.
+     */
+    public static void Save(Path file, int itemCount, long fingerprint, Map<String, ArrayList<Integer>> map,
+                            ItemCompositionTable compositions) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(itemCount);
+            out.writeLong(fingerprint);
+            out.writeInt(map.size());
+
+            for (Map.Entry<String, ArrayList<Integer>> entry : map.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+
+                out.writeInt(entry.getValue().size());
+                for (int id : entry.getValue()) {
+                    out.writeInt(id);
+                }
+            }
+
+            int tableSize = compositions.size();
+            out.writeInt(tableSize);
+
+            for (int i = 0; i < tableSize; i++) {
+                out.writeInt(compositions.canonicalize(i));
+            }
+
+            for (int i = 0; i < tableSize; i++) {
+                out.writeInt(compositions.getPrice(i));
+            }
+
+            for (int i = 0; i < tableSize; i++) {
+                out.writeInt(compositions.getHighAlch(i));
+            }
+        } catch (IOException e) {
+            log.warn("[CUSTOMITEMHOVERS] Couldn't write item name cache: {}", e.toString());
+            return;
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[CUSTOMITEMHOVERS] Couldn't replace item name cache: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.geel.customitemhovers;
+
+import net.runelite.client.game.ItemManager;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the Grand Exchange prices of items with hovers, indexed by canonical item ID. Backs the `GE_PRICE` and
+ * `GE_TOTAL` variables.
+ *
+ * Filled in bulk from `ItemManager.getItemPrice`, on a schedule and whenever hovers are reloaded, rather than when an
+ * item is hovered; reading a price is an array lookup. Only items which have a hover reading a price are looked up,
+ * one at a time for items which only gain one once their lazily resolved regexes are matched.
+ */
+class ItemPriceTable {
+    //How often prices are refreshed. RuneLite itself fetches new prices much less often than this.
+    static final int REFRESH_INTERVAL_MINUTES = 5;
+
+    //Replaced whole on each refresh, so readers always see a complete snapshot
+    private volatile int[] prices = new int[0];
+
+    //Bumped whenever `prices` changes
+    private volatile int version = 0;
+
+    /**
+     * @return The item's price as of the last refresh, or 0 if it isn't known
+     */
+    int get(int canonicalID) {
+        int[] p = prices;
+        return canonicalID >= 0 && canonicalID < p.length ? p[canonicalID] : 0;
+    }
+
+    /**
+     * @return A number which changes whenever any price does
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Looks up the price of every item in `index` which has a hover reading a price. Items whose lazily resolved
+     * regexes haven't been matched yet are skipped; see `HoverIndex.peek`, and `refresh(int, ItemManager)` for
+     * looking them up once they have been.
+     *
+     * Must be called on the client thread.
+     *
+     * @return True if any price changed
+     */
+    boolean refresh(HoverIndex index, ItemManager itemManager) {
+        int[] next = new int[index.size()];
+
+        for (int id = 0; id < next.length; id++) {
+            if (ReadsPrice(index.peek(id)))
+                next[id] = itemManager.getItemPrice(id);
+        }
+
+        if (Arrays.equals(next, prices))
+            return false;
+
+        prices = next;
+        version++;
+        return true;
+    }
+
+    /**
+     * Looks up the price of a single item, eg. one whose lazily resolved regexes just gave it a hover reading a price.
+     *
+     * Must be called on the client thread.
+     *
+     * @return True if its price changed
+     */
+    boolean refresh(int canonicalID, ItemManager itemManager) {
+        int price = itemManager.getItemPrice(canonicalID);
+        if (price == get(canonicalID))
+            return false;
+
+        int[] next = Arrays.copyOf(prices, Math.max(prices.length, canonicalID + 1));
+        next[canonicalID] = price;
+
+        prices = next;
+        version++;
+        return true;
+    }
+
+    /**
+     * @return True if any of `templates` reads a price
+     */
+    static boolean ReadsPrice(HoverTemplate[] templates) {
+        if (templates == null)
+            return false;
+
+        for (HoverTemplate t : templates) {
+            if ((t.getDependencies() & HoverTemplate.DEPENDS_ON_PRICE) != 0)
+                return true;
+        }
+
+        return false;
+    }
+}
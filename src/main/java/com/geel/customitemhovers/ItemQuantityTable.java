@@ -0,0 +1,180 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.client.game.ItemManager;
+
+import java.util.Arrays;
+
+/**
+ * How many of each item are in the inventory, bank and seed vault, indexed by canonical item ID. Backs the
+ * `INV_QTY`, `BANK_QTY`, `VAULT_QTY` and `TOTAL_QTY` variables.
+ *
+ * Kept up to date from ItemContainerChanged events rather than by scanning containers: each container's previous
+ * contents are remembered, and only the slots which changed adjust the counts. Reading a count is an array lookup.
+ *
+ * Every item also has a version, bumped whenever any of its counts change, which is used to tell whether a hover
+ * built from its counts is still current.
+ *
+ * Only used on the client thread.
+ */
+class ItemQuantityTable {
+    //The containers counted, in the order of `counts`
+    private static final InventoryID[] CONTAINERS = ContainerHoverCache.CONTAINERS;
+
+    private static final int INVENTORY = 0;
+    private static final int BANK = 1;
+    private static final int SEED_VAULT = 2;
+
+    //counts[container][canonical ID]; grown as needed
+    private final int[][] counts = new int[CONTAINERS.length][0];
+    private int[] versions = new int[0];
+
+    //Each container's contents when it last changed: raw IDs, their canonical IDs, and quantities, by slot
+    private final int[][] slotIDs = new int[CONTAINERS.length][0];
+    private final int[][] slotCanonicalIDs = new int[CONTAINERS.length][0];
+    private final int[][] slotQuantities = new int[CONTAINERS.length][0];
+
+    /**
+     * Applies a container's new contents, adjusting the counts of only the slots which changed.
+     *
+     * @return True if any count changed
+     */
+    boolean update(int containerId, Item[] items, ItemManager itemManager) {
+        int c = indexOf(containerId);
+        if (c < 0)
+            return false;
+
+        boolean changed = false;
+
+        //Slots past the end of the new contents have been emptied
+        for (int slot = items.length; slot < slotIDs[c].length; slot++) {
+            if (slotIDs[c][slot] >= 0)
+                changed |= adjust(c, slotCanonicalIDs[c][slot], -slotQuantities[c][slot]);
+        }
+
+        if (items.length != slotIDs[c].length)
+            resizeSlots(c, items.length);
+
+        int[] ids = slotIDs[c];
+        int[] canonicalIDs = slotCanonicalIDs[c];
+        int[] quantities = slotQuantities[c];
+
+        for (int slot = 0; slot < items.length; slot++) {
+            int id = items[slot].getId();
+            int quantity = id >= 0 ? items[slot].getQuantity() : 0;
+
+            if (id == ids[slot] && quantity == quantities[slot])
+                continue;
+
+            if (ids[slot] >= 0)
+                changed |= adjust(c, canonicalIDs[slot], -quantities[slot]);
+
+            if (id != ids[slot])
+                canonicalIDs[slot] = id < 0 ? -1 : ItemNameMap.Canonicalize(itemManager, id);
+
+            if (id >= 0)
+                changed |= adjust(c, canonicalIDs[slot], quantity);
+
+            ids[slot] = id;
+            quantities[slot] = quantity;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Forgets every container's contents, eg. on logout, so another account's items aren't counted. The versions of
+     * items which had any count are bumped rather than reset, so hovers built from the old counts are never current.
+     */
+    void clear() {
+        for (int id = 0; id < versions.length; id++) {
+            for (int c = 0; c < CONTAINERS.length; c++) {
+                if (counts[c][id] != 0) {
+                    versions[id]++;
+                    break;
+                }
+            }
+        }
+
+        for (int c = 0; c < CONTAINERS.length; c++) {
+            Arrays.fill(counts[c], 0);
+            resizeSlots(c, 0);
+        }
+    }
+
+    /**
+     * Resizes a container's remembered contents; any new slots are empty.
+     */
+    private void resizeSlots(int c, int size) {
+        int oldSize = slotIDs[c].length;
+
+        slotIDs[c] = Arrays.copyOf(slotIDs[c], size);
+        slotCanonicalIDs[c] = Arrays.copyOf(slotCanonicalIDs[c], size);
+        slotQuantities[c] = Arrays.copyOf(slotQuantities[c], size);
+
+        if (size > oldSize) {
+            Arrays.fill(slotIDs[c], oldSize, size, -1);
+            Arrays.fill(slotCanonicalIDs[c], oldSize, size, -1);
+        }
+    }
+
+    int getInventory(int canonicalID) {
+        return get(INVENTORY, canonicalID);
+    }
+
+    int getBank(int canonicalID) {
+        return get(BANK, canonicalID);
+    }
+
+    int getSeedVault(int canonicalID) {
+        return get(SEED_VAULT, canonicalID);
+    }
+
+    /**
+     * @return A number which changes whenever any count of the given item changes
+     */
+    int getVersion(int canonicalID) {
+        return canonicalID >= 0 && canonicalID < versions.length ? versions[canonicalID] : 0;
+    }
+
+    private int get(int container, int canonicalID) {
+        int[] containerCounts = counts[container];
+        return canonicalID >= 0 && canonicalID < containerCounts.length ? containerCounts[canonicalID] : 0;
+    }
+
+    /**
+     * @return True if the count changed
+     */
+    private boolean adjust(int container, int canonicalID, int delta) {
+        if (delta == 0)
+            return false;
+
+        if (canonicalID >= versions.length)
+            grow(canonicalID + 1);
+
+        counts[container][canonicalID] += delta;
+        versions[canonicalID]++;
+
+        return true;
+    }
+
+    private void grow(int minSize) {
+        int size = Math.max(minSize + minSize / 2, versions.length * 3 / 2);
+
+        for (int c = 0; c < CONTAINERS.length; c++) {
+            counts[c] = Arrays.copyOf(counts[c], size);
+        }
+
+        versions = Arrays.copyOf(versions, size);
+    }
+
+    private static int indexOf(int containerId) {
+        for (int c = 0; c < CONTAINERS.length; c++) {
+            if (CONTAINERS[c].getId() == containerId)
+                return c;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,252 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Resolves the `items_regex` entries of many HoverDefs at once.
+ *
+ * Every distinct regex is compiled once, and the item name table is scanned once for all of them, split across
+ * cores with fork/join. Each def ends up with a bitset of the name indices (see `ItemNameMap.GetNames()`) that match
+ * any of its regexes.
+ *
+ * Patterns are matched within a budget (see `RegexGuard`); one which exceeds it is skipped, as if it matched nothing.
+ */
+@Slf4j
+public class ItemRegexResolver {
+    //Number of names each leaf task scans. Must be a multiple of 64, so that leaves never share a bitset word.
+    private static final int NAMES_PER_TASK = 64 * 32;
+
+    //The slowest patterns are reported at info level, if they took at least this long
+    private static final int SLOW_PATTERNS_REPORTED = 5;
+    private static final long SLOW_PATTERN_NANOS = 10_000_000;
+
+    /**
+     * Resolves the regexes of every def.
+     *
+     * Invalid regexes, and regexes which take too long to match, are logged and skipped.
+     *
+     * @return A bitset of matching name indices for each def, in the same order as `defs`. Defs without any regexes
+     * get an empty bitset.
+     */
+    public static List<BitSet> Resolve(List<HoverDef> defs) {
+        String[] names = ItemNameMap.GetNames();
+
+        //Gather and compile every distinct pattern
+        Map<String, Integer> patternIndices = new LinkedHashMap<>();
+        List<Pattern> patterns = new ArrayList<>();
+        List<String> patternSources = new ArrayList<>();
+        List<int[]> defPatterns = new ArrayList<>(defs.size());
+
+        for (HoverDef d : defs) {
+            if (d.ItemNamesRegex == null || d.ItemNamesRegex.length == 0) {
+                defPatterns.add(new int[0]);
+                continue;
+            }
+
+            int[] indices = new int[d.ItemNamesRegex.length];
+            int count = 0;
+
+            for (int r = 0; r < d.ItemNamesRegex.length; r++) {
+                String regex = d.ItemNamesRegex[r];
+                Integer index = patternIndices.get(regex);
+
+                if (index == null) {
+                    String source = d.GetSourceDescription() + ", items_regex #" + r;
+
+                    try {
+                        patterns.add(Pattern.compile(regex));
+                    } catch (PatternSyntaxException e) {
+                        log.error("[CUSTOMITEMHOVERS] Invalid items_regex `{}` ({}): {}", regex, source,
+                                e.getDescription());
+                        continue;
+                    }
+
+                    RegexGuard.Preflight(regex, source);
+
+                    index = patterns.size() - 1;
+                    patternIndices.put(regex, index);
+                    patternSources.add(source);
+                }
+
+                indices[count++] = index;
+            }
+
+            defPatterns.add(Arrays.copyOf(indices, count));
+        }
+
+        //Scan every name against every pattern
+        long[][] matches = new long[patterns.size()][(names.length + 63) / 64];
+        AtomicLongArray nanos = new AtomicLongArray(patterns.size());
+        Budgets budgets = new Budgets(patterns.size());
+
+        long start = System.nanoTime();
+        if (!patterns.isEmpty()) {
+            Pattern[] patternArr = patterns.toArray(new Pattern[0]);
+            ForkJoinPool.commonPool().invoke(new ScanTask(patternArr, names, 0, names.length, matches, nanos, budgets));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        //Whatever a pattern matched before it was aborted is dropped, so results don't depend on scheduling
+        String[] regexArr = patternIndices.keySet().toArray(new String[0]);
+        for (int p = 0; p < regexArr.length; p++) {
+            if (!budgets.isExceeded(p))
+                continue;
+
+            Arrays.fill(matches[p], 0);
+
+            String name = budgets.exceededOn.get(p);
+            if (!name.isEmpty())
+                log.warn("[CUSTOMITEMHOVERS] items_regex `{}` ({}) took too long matching `{}`; skipping it",
+                        regexArr[p], patternSources.get(p), name);
+            else
+                log.warn("[CUSTOMITEMHOVERS] items_regex `{}` ({}) took too long matching item names; skipping it",
+                        regexArr[p], patternSources.get(p));
+        }
+
+        reportTimings(patternIndices.keySet(), nanos, names.length, elapsed);
+
+        //Combine each def's patterns
+        List<BitSet> ret = new ArrayList<>(defs.size());
+        for (int[] indices : defPatterns) {
+            BitSet bits = new BitSet(names.length);
+
+            for (int index : indices) {
+                bits.or(BitSet.valueOf(matches[index]));
+            }
+
+            ret.add(bits);
+        }
+
+        return ret;
+    }
+
+    private static void reportTimings(Collection<String> regexes, AtomicLongArray nanos, int nameCount, long elapsed) {
+        if (regexes.isEmpty())
+            return;
+
+        String[] regexArr = regexes.toArray(new String[0]);
+        Integer[] order = new Integer[regexArr.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            log.debug("[CUSTOMITEMHOVERS] items_regex `{}`: {}us", regexArr[i], nanos.get(i) / 1000);
+        }
+
+        log.info("[CUSTOMITEMHOVERS] Resolved {} items_regex patterns against {} names in {}ms",
+                regexArr.length, nameCount, elapsed / 1_000_000);
+
+        Arrays.sort(order, (a, b) -> Long.compare(nanos.get(b), nanos.get(a)));
+        for (int i = 0; i < Math.min(SLOW_PATTERNS_REPORTED, order.length); i++) {
+            if (nanos.get(order[i]) < SLOW_PATTERN_NANOS)
+                break;
+
+            log.info("[CUSTOMITEMHOVERS]   slowest #{}: `{}` took {}ms of CPU time",
+                    i + 1, regexArr[order[i]], nanos.get(order[i]) / 1_000_000.0);
+        }
+    }
+
+    /**
+     * The characters each pattern has read so far, across every task, and which patterns exceeded their budget.
+     */
+    private static class Budgets {
+        private final AtomicLongArray steps;
+
+        //The name each pattern exceeded its budget for a single match on, or "" if it ran out of `PATTERN_STEPS`
+        private final AtomicReferenceArray<String> exceededOn;
+
+        Budgets(int patterns) {
+            steps = new AtomicLongArray(patterns);
+            exceededOn = new AtomicReferenceArray<>(patterns);
+        }
+
+        boolean isExceeded(int pattern) {
+            return exceededOn.get(pattern) != null;
+        }
+
+        /**
+         * @return False if the pattern has now read more than `PATTERN_STEPS` characters
+         */
+        boolean add(int pattern, long patternSteps) {
+            if (steps.addAndGet(pattern, patternSteps) <= RegexGuard.PATTERN_STEPS)
+                return true;
+
+            exceededOn.compareAndSet(pattern, null, "");
+            return false;
+        }
+
+        void exceeded(int pattern, String name) {
+            exceededOn.compareAndSet(pattern, null, name);
+        }
+    }
+
+    /**
+     * Matches names [from, to) against every pattern, splitting the range until it's small enough.
+     */
+    private static class ScanTask extends RecursiveAction {
+        private final Pattern[] patterns;
+        private final String[] names;
+        private final int from;
+        private final int to;
+        private final long[][] matches;
+        private final AtomicLongArray nanos;
+        private final Budgets budgets;
+
+        ScanTask(Pattern[] patterns, String[] names, int from, int to, long[][] matches, AtomicLongArray nanos,
+                 Budgets budgets) {
+            this.patterns = patterns;
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.matches = matches;
+            this.nanos = nanos;
+            this.budgets = budgets;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > NAMES_PER_TASK) {
+                //Split on a multiple of NAMES_PER_TASK so the halves write to disjoint words
+                int mid = from + ((to - from) / 2 / NAMES_PER_TASK) * NAMES_PER_TASK;
+                mid = Math.max(mid, from + NAMES_PER_TASK);
+
+                invokeAll(new ScanTask(patterns, names, from, mid, matches, nanos, budgets),
+                        new ScanTask(patterns, names, mid, to, matches, nanos, budgets));
+                return;
+            }
+
+            for (int p = 0; p < patterns.length; p++) {
+                if (budgets.isExceeded(p))
+                    continue;
+
+                long start = System.nanoTime();
+                RegexGuard.BudgetedMatcher m = new RegexGuard.BudgetedMatcher(patterns[p]);
+                long[] words = matches[p];
+                int n = from;
+
+                try {
+                    for (; n < to; n++) {
+                        if (m.matches(names[n]))
+                            words[n >> 6] |= 1L << n;
+
+                        //Check in with the other tasks once per word
+                        if ((n & 63) == 63 && (!budgets.add(p, m.takeSteps()) || budgets.isExceeded(p)))
+                            break;
+                    }
+
+                    budgets.add(p, m.takeSteps());
+                } catch (RegexGuard.BudgetExceededException e) {
+                    budgets.exceeded(p, names[n]);
+                }
+
+                nanos.addAndGet(p, System.nanoTime() - start);
+            }
+        }
+    }
+}
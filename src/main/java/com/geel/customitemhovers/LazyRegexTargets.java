@@ -0,0 +1,310 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The `items_regex` targets of HoverDefs which are matched lazily (see `HoverDef.LazyRegex`): rather than scanning
+ * every item name when hovers are loaded, an item's name is tested the first time the item is looked up in the
+ * index, and the result is remembered for as long as the index is in use.
+ *
+ * Every pattern is also combined into a single alternation, so an item whose name matches none of them (by far the
+ * most common case) is rejected with one match attempt rather than one per pattern. Only items which pass it are
+ * tested against each def's own patterns, to find out which defs target them.
+ *
+ * Matching happens on whichever thread looks items up, usually the client thread, so patterns are matched within a
+ * budget (see `RegexGuard`). A pattern which exceeds it is skipped from then on; so is the combined pattern.
+ *
+ * Thread safe.
+ */
+@Slf4j
+class LazyRegexTargets {
+    //Remembered for items which turned out to have no hovers
+    private static final HoverTemplate[] NONE = new HoverTemplate[0];
+
+    //Patterns which can't be combined: group numbers shift once combined, so backreferences would refer to the wrong
+    //group, and `\Q` without `\E`, or a comment in (?x) mode, would swallow the patterns after it
+    private static final Pattern UNCOMBINABLE = Pattern.compile("\\\\([1-9]|k<|Q)|\\(\\?[a-zA-Z]*x");
+
+    //Every def in the index, in load order
+    private final HoverDef[] defs;
+
+    //Every distinct valid pattern, and where it was first seen
+    private final Pattern[] patterns;
+    private final String[] patternSources;
+
+    //Characters each pattern has read so far, and whether it has exceeded its budget (1 if so)
+    private final AtomicLongArray patternSteps;
+    private final AtomicIntegerArray patternSkipped;
+
+    //Indices into `defs` of the defs with lazily matched regexes, and the indices into `patterns` of each's patterns
+    private final int[] lazyDefs;
+    private final int[][] lazyPatterns;
+
+    //All patterns combined; null if they couldn't be, eg. because one uses backreferences, or if it took too long
+    private volatile Pattern prefilter;
+
+    //The indices into `defs` of the defs whose resolved `ItemIDs` contain each item ID, flattened:
+    //item `id`'s are eagerDefs[eagerStarts[id]] until eagerDefs[eagerStarts[id + 1]]
+    private final int[] eagerStarts;
+    private final int[] eagerDefs;
+
+    //Templates of each item ID, once it has been looked up
+    private final AtomicReferenceArray<HoverTemplate[]> resolved;
+
+    //Items whose matched regexes gave them hovers reading a price, which their eager templates didn't
+    private final Queue<Integer> newlyPriced = new ConcurrentLinkedQueue<>();
+
+    LazyRegexTargets(HoverDef[] defs, int[] lazyDefs, int[] eagerStarts, int[] eagerDefs) {
+        this.defs = defs;
+        this.lazyDefs = lazyDefs;
+        this.eagerStarts = eagerStarts;
+        this.eagerDefs = eagerDefs;
+        this.resolved = new AtomicReferenceArray<>(eagerStarts.length - 1);
+
+        //Compile every distinct pattern once; invalid ones map to -1
+        Map<String, Integer> compiled = new HashMap<>();
+        List<Pattern> patternList = new ArrayList<>();
+        List<String> sourceList = new ArrayList<>();
+        lazyPatterns = new int[lazyDefs.length][];
+
+        for (int i = 0; i < lazyDefs.length; i++) {
+            HoverDef d = defs[lazyDefs[i]];
+            int[] indices = new int[d.ItemNamesRegex.length];
+            int count = 0;
+
+            for (int r = 0; r < d.ItemNamesRegex.length; r++) {
+                String regex = d.ItemNamesRegex[r];
+                Integer index = compiled.get(regex);
+
+                if (index == null) {
+                    String source = d.GetSourceDescription() + ", items_regex #" + r;
+                    index = -1;
+
+                    try {
+                        patternList.add(Pattern.compile(regex));
+                        sourceList.add(source);
+                        index = patternList.size() - 1;
+
+                        RegexGuard.Preflight(regex, source);
+                    } catch (PatternSyntaxException e) {
+                        log.error("[CUSTOMITEMHOVERS] Invalid items_regex `{}` ({}): {}", regex, source,
+                                e.getDescription());
+                    }
+
+                    compiled.put(regex, index);
+                }
+
+                if (index >= 0)
+                    indices[count++] = index;
+            }
+
+            lazyPatterns[i] = Arrays.copyOf(indices, count);
+        }
+
+        patterns = patternList.toArray(new Pattern[0]);
+        patternSources = sourceList.toArray(new String[0]);
+        patternSteps = new AtomicLongArray(patterns.length);
+        patternSkipped = new AtomicIntegerArray(patterns.length);
+        prefilter = combine(patternList);
+    }
+
+    /**
+     * @param eager The item's templates from the defs targeting it explicitly or by name
+     * @return The item's templates, including those of defs whose regexes match its name, or null if it has none
+     */
+    HoverTemplate[] get(int itemID, HoverTemplate[] eager) {
+        HoverTemplate[] templates = resolved.get(itemID);
+        if (templates != null)
+            return templates == NONE ? null : templates;
+
+        //Nothing to match against yet; the index is rebuilt once the name map is ready
+        if (!ItemNameMap.IsReady())
+            return eager;
+
+        templates = resolve(itemID, eager);
+
+        //If another thread got here first, it came to the same result
+        if (resolved.compareAndSet(itemID, null, templates != null ? templates : NONE)
+                && ItemPriceTable.ReadsPrice(templates) && !ItemPriceTable.ReadsPrice(eager))
+            newlyPriced.add(itemID);
+
+        return templates;
+    }
+
+    /**
+     * @return The item's templates if it has already been looked up, otherwise `eager`; never tests its name
+     */
+    HoverTemplate[] peek(int itemID, HoverTemplate[] eager) {
+        HoverTemplate[] templates = resolved.get(itemID);
+        if (templates == null)
+            return eager;
+
+        return templates == NONE ? null : templates;
+    }
+
+    /**
+     * @return An item which `get` found regexes giving it hovers which read its price, which `peek` didn't return
+     * before; or -1 if there are no more. Each such item is returned once.
+     */
+    int pollNewlyPriced() {
+        Integer itemID = newlyPriced.poll();
+        return itemID != null ? itemID : -1;
+    }
+
+    private HoverTemplate[] resolve(int itemID, HoverTemplate[] eager) {
+        String[] names = ItemNameMap.GetNames();
+        int nameIndex = ItemNameMap.GetNameIndex(itemID);
+        if (nameIndex < 0 || nameIndex >= names.length)
+            return eager;
+
+        String name = names[nameIndex];
+        if (!passesPrefilter(name))
+            return eager;
+
+        //Merge the defs targeting the item eagerly with those whose regexes match, keeping load order
+        int[] matched = new int[lazyDefs.length];
+        int matchedCount = 0;
+
+        for (int i = 0; i < lazyDefs.length; i++) {
+            for (int p : lazyPatterns[i]) {
+                if (matches(p, name)) {
+                    matched[matchedCount++] = lazyDefs[i];
+                    break;
+                }
+            }
+        }
+
+        if (matchedCount == 0)
+            return eager;
+
+        List<HoverDef> itemDefs = new ArrayList<>();
+        int e = eagerStarts[itemID];
+        int eagerEnd = eagerStarts[itemID + 1];
+        int m = 0;
+
+        while (e < eagerEnd || m < matchedCount) {
+            int next;
+            if (m == matchedCount || (e < eagerEnd && eagerDefs[e] <= matched[m])) {
+                next = eagerDefs[e++];
+
+                //Targeted both ways
+                if (m < matchedCount && matched[m] == next)
+                    m++;
+            } else {
+                next = matched[m++];
+            }
+
+            itemDefs.add(defs[next]);
+        }
+
+        return flatten(itemDefs);
+    }
+
+    /**
+     * @return False if no pattern can match `name`
+     */
+    private boolean passesPrefilter(String name) {
+        Pattern p = prefilter;
+        if (p == null)
+            return true;
+
+        try {
+            return new RegexGuard.BudgetedMatcher(p).matches(name);
+        } catch (RegexGuard.BudgetExceededException e) {
+            //One of the patterns is at fault; it's caught when matched on its own
+            log.debug("[CUSTOMITEMHOVERS] Combined items_regex took too long matching `{}`; no longer using it", name);
+            prefilter = null;
+            return true;
+        }
+    }
+
+    /**
+     * @return True if pattern `p` matches `name`; false if it doesn't, or has exceeded its budget
+     */
+    private boolean matches(int p, String name) {
+        if (patternSkipped.get(p) != 0)
+            return false;
+
+        RegexGuard.BudgetedMatcher m = new RegexGuard.BudgetedMatcher(patterns[p]);
+        try {
+            boolean matches = m.matches(name);
+
+            if (patternSteps.addAndGet(p, m.takeSteps()) <= RegexGuard.PATTERN_STEPS)
+                return matches;
+
+            if (patternSkipped.getAndSet(p, 1) == 0)
+                log.warn("[CUSTOMITEMHOVERS] items_regex `{}` ({}) took too long matching item names; skipping it",
+                        patterns[p].pattern(), patternSources[p]);
+        } catch (RegexGuard.BudgetExceededException e) {
+            if (patternSkipped.getAndSet(p, 1) == 0)
+                log.warn("[CUSTOMITEMHOVERS] items_regex `{}` ({}) took too long matching `{}`; skipping it",
+                        patterns[p].pattern(), patternSources[p], name);
+        }
+
+        return false;
+    }
+
+    private static HoverTemplate[] flatten(List<HoverDef> itemDefs) {
+        int count = 0;
+        for (HoverDef d : itemDefs) {
+            count += d.Templates.length;
+        }
+
+        if (count == 0)
+            return null;
+
+        if (itemDefs.size() == 1)
+            return itemDefs.get(0).Templates;
+
+        HoverTemplate[] templates = new HoverTemplate[count];
+        int pos = 0;
+        for (HoverDef d : itemDefs) {
+            System.arraycopy(d.Templates, 0, templates, pos, d.Templates.length);
+            pos += d.Templates.length;
+        }
+
+        return templates;
+    }
+
+    /**
+     * Combines patterns into a single alternation, which matches a name if and only if any of them does.
+     *
+     * @return The combined pattern, or null if there's nothing to combine or the patterns can't be combined safely
+     */
+    private static Pattern combine(Collection<Pattern> patterns) {
+        StringBuilder combined = new StringBuilder();
+
+        for (Pattern p : patterns) {
+            if (p == null)
+                continue;
+
+            String regex = p.pattern();
+            if (UNCOMBINABLE.matcher(regex).find())
+                return null;
+
+            if (combined.length() > 0)
+                combined.append('|');
+
+            combined.append("(?:").append(regex).append(')');
+        }
+
+        if (combined.length() == 0)
+            return null;
+
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            //eg. two patterns declare the same named group
+            log.debug("[CUSTOMITEMHOVERS] Couldn't combine items_regex patterns: {}", e.getDescription());
+            return null;
+        }
+    }
+}
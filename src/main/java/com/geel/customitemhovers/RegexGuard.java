@@ -0,0 +1,278 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps user supplied `items_regex` patterns from hanging the client.
+ *
+ * A badly written pattern, typically with nested quantifiers like `(\w+\s?)+`, can backtrack catastrophically on a
+ * name it doesn't match, and take seconds (or forever) to give up. So patterns are matched against names through a
+ * `BudgetedMatcher`, which counts the characters the regex engine reads and aborts a match which reads too many; the
+ * pattern is then skipped. `Preflight` warns about pathological patterns before they're used.
+ */
+@Slf4j
+public class RegexGuard {
+    //Characters a pattern may read while matching a single name. Names are short, and a sane pattern reads each of
+    //their characters a handful of times (a few hundred reads in all); one which backtracks catastrophically reads them
+    //exponentially, or polynomially, many times.
+    public static final int MATCH_STEPS = 100_000;
+
+    //Characters a pattern may read over all the names it's matched against, about a second of matching. Sane patterns
+    //read a couple of million over every item name.
+    public static final long PATTERN_STEPS = 20_000_000L;
+
+    //A group containing an unbounded quantifier, repeated at least this many times, is flagged too, eg. `(.*,){12}`
+    private static final int FLAGGED_COUNT = 10;
+
+    /**
+     * Logs a warning if `regex` has nested unbounded quantifiers, which can backtrack catastrophically.
+     *
+     * @param source Where the pattern came from, eg. from `HoverDef.GetSourceDescription`
+     * @return True if the pattern was flagged
+     */
+    public static boolean Preflight(String regex, String source) {
+        int at = FindNestedQuantifier(regex);
+        if (at < 0)
+            return false;
+
+        log.warn("[CUSTOMITEMHOVERS] items_regex `{}` ({}) repeats a group which itself repeats (at position {}), " +
+                "which can make matching very slow; it will be skipped if it takes too long", regex, source, at);
+        return true;
+    }
+
+    /**
+     * Looks for a group which has an unbounded quantifier (`*`, `+` or `{n,}`) inside it, and is itself followed by
+     * one (or by a large count), eg. `(a+)+` or `(\w+\s?)*`.
+     *
+     * @return The position of the outer quantifier, or -1 if there's none
+     */
+    public static int FindNestedQuantifier(String regex) {
+        //Whether each open group contains an unbounded quantifier so far
+        Deque<boolean[]> groups = new ArrayDeque<>();
+        groups.push(new boolean[1]);
+
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    i = skipEscape(regex, i);
+                    break;
+                case '[':
+                    i = skipClass(regex, i);
+                    break;
+                case '(':
+                    groups.push(new boolean[1]);
+                    i++;
+                    break;
+                case ')': {
+                    boolean repeatsInside = groups.size() > 1 ? groups.pop()[0] : false;
+                    i++;
+
+                    if (repeatsInside && quantifierEnd(regex, i, FLAGGED_COUNT) > i)
+                        return i;
+
+                    if (repeatsInside || quantifierEnd(regex, i, Integer.MAX_VALUE) > i)
+                        groups.peek()[0] = true;
+                    break;
+                }
+                default: {
+                    int after = quantifierEnd(regex, i, Integer.MAX_VALUE);
+                    if (after > i) {
+                        groups.peek()[0] = true;
+                        i = after;
+                    } else {
+                        i++;
+                    }
+                    break;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param minCount Counted quantifiers (`{n}` and `{n,m}`) only count if they allow at least this many repeats
+     * @return The position after the quantifier at `i`, or `i` if there's none there. `?` isn't counted.
+     */
+    private static int quantifierEnd(String regex, int i, int minCount) {
+        if (i >= regex.length())
+            return i;
+
+        char c = regex.charAt(i);
+        if (c == '*' || c == '+')
+            return i + 1;
+
+        if (c != '{')
+            return i;
+
+        int close = regex.indexOf('}', i);
+        if (close < 0)
+            return i;
+
+        //{n,} is unbounded
+        if (regex.charAt(close - 1) == ',')
+            return close + 1;
+
+        //The most repeats allowed: m in {n,m}, n in {n}
+        int comma = regex.lastIndexOf(',', close);
+        int countStart = comma > i ? comma + 1 : i + 1;
+
+        try {
+            return Integer.parseInt(regex.substring(countStart, close).trim()) >= minCount ? close + 1 : i;
+        } catch (NumberFormatException e) {
+            //A literal brace
+            return i;
+        }
+    }
+
+    /**
+     * @return The position after the escape sequence starting at `i`
+     */
+    private static int skipEscape(String regex, int i) {
+        if (i + 1 >= regex.length())
+            return regex.length();
+
+        char c = regex.charAt(i + 1);
+
+        //Everything up to \E is literal
+        if (c == 'Q') {
+            int end = regex.indexOf("\\E", i + 2);
+            return end < 0 ? regex.length() : end + 2;
+        }
+
+        //\p{Alpha}, \x{1F600}, \N{name} and \k<name>; the braces in eg. \d{2,} are a quantifier
+        char open = c == 'k' ? '<' : "pPxN".indexOf(c) >= 0 ? '{' : 0;
+        if (open != 0 && i + 2 < regex.length() && regex.charAt(i + 2) == open) {
+            int end = regex.indexOf(open == '<' ? '>' : '}', i + 2);
+            return end < 0 ? regex.length() : end + 1;
+        }
+
+        return i + 2;
+    }
+
+    /**
+     * @return The position after the character class starting at `i`, which may contain nested classes
+     */
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                continue;
+            }
+
+            if (c == '[') {
+                depth++;
+                i++;
+
+                //A ] right at the start of a class is a literal
+                if (i < regex.length() && regex.charAt(i) == '^')
+                    i++;
+                if (i < regex.length() && regex.charAt(i) == ']')
+                    i++;
+                continue;
+            }
+
+            i++;
+            if (c == ']' && --depth == 0)
+                return i;
+        }
+
+        return i;
+    }
+
+    /**
+     * Thrown by `BudgetedMatcher` when a match reads more than `MATCH_STEPS` characters. Carries no stack trace, so
+     * throwing it is cheap.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("items_regex match exceeded its budget", null, false, false);
+        }
+    }
+
+    /**
+     * Matches one pattern against names one at a time, counting the characters read. Not thread safe; use one per
+     * thread.
+     */
+    public static class BudgetedMatcher {
+        private final Input input = new Input();
+        private final Matcher matcher;
+
+        public BudgetedMatcher(Pattern pattern) {
+            matcher = pattern.matcher(input);
+        }
+
+        /**
+         * @return True if the whole of `name` matches
+         * @throws BudgetExceededException If the match read more than `MATCH_STEPS` characters
+         */
+        public boolean matches(String name) {
+            input.reset(name);
+            matcher.reset(input);
+
+            return matcher.matches();
+        }
+
+        /**
+         * @return The characters read since the last call, including by a match which exceeded its budget
+         */
+        public long takeSteps() {
+            long steps = input.steps;
+            input.steps = 0;
+            input.limit = MATCH_STEPS;
+
+            return steps;
+        }
+    }
+
+    /**
+     * A name which counts every character read from it.
+     */
+    private static class Input implements CharSequence {
+        private String name = "";
+        private long steps;
+        private long limit;
+
+        void reset(String name) {
+            this.name = name;
+            limit = steps + MATCH_STEPS;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++steps > limit)
+                throw BudgetExceededException.INSTANCE;
+
+            return name.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return name.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return name.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
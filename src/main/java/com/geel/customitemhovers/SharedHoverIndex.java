@@ -0,0 +1,295 @@
+package com.geel.customitemhovers;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Resolved hovers, published to a folder next to the plugin folder so that other clients running at the same time can
+ * load them, rather than each parsing and resolving every hover file itself. The folder isn't watched, so publishing
+ * doesn't wake up any client's hover watcher; clients pick a generation up when they start, or when their own hover
+ * files change.
+ *
+ * The client which loads a set of hover files first writes its defs, compiled and resolved, to a hover bundle named
+ * after a generation number (`hoverindex.<generation>.shared`), and records in the stamp file (`hoverindex.lock`)
+ * which generation is current, which hover files it was built from (see `SourcesDigest`) and which item catalog it was
+ * resolved against. Other clients whose folder still matches the stamp load that bundle instead (see
+ * `HoverBundle.Load`).
+ *
+ * Only the work of loading is shared, not memory: each client decodes the generation's defs into its own heap, and
+ * builds its own index from them.
+ *
+ * The stamp file is also the lock: it's locked shared while it's read and a generation is loaded, and exclusively while
+ * a client builds and publishes one. Locks are only ever tried, never waited for, since the client holding one may be
+ * slow or hung: a client which finds the stamp locked loads its hover files itself, without publishing them.
+ *
+ * Every generation goes to a new file, and older ones are deleted afterwards when possible, since on some platforms a
+ * file can't be replaced or deleted while another process has it open.
+ */
+@Slf4j
+public class SharedHoverIndex {
+    public static final String STAMP_FILE_NAME = "hoverindex.lock";
+
+    private static final String BUNDLE_PREFIX = "hoverindex.";
+    private static final String BUNDLE_SUFFIX = ".shared";
+
+    private static final int MAGIC = 0x43494853; //"CIHS"
+    private static final int VERSION = 2;
+
+    //MAGIC, VERSION, generation, sources digest, catalog fingerprint
+    private static final int STAMP_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    /**
+     * What the current generation was built from.
+     */
+    public static class Stamp {
+        public final long generation;
+
+        //See `SourcesDigest`
+        public final long sources;
+
+        //Fingerprint of the item catalog the defs were resolved against (see `ItemNameMapCache.Fingerprint`)
+        public final long fingerprint;
+
+        Stamp(long generation, long sources, long fingerprint) {
+            this.generation = generation;
+            this.sources = sources;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * @return True if the generation was built from the given hover files, and resolved against the current item
+         * catalog (or the item name map isn't ready yet, so it can't be told)
+         */
+        public boolean matches(long sources) {
+            return this.sources == sources && (!ItemNameMap.IsReady() || fingerprint == ItemNameMap.GetFingerprint());
+        }
+    }
+
+    private final Path dir;
+
+    public SharedHoverIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Computes a cheap digest of the hover files in `dir`, from each one's name, size and modification time.
+     */
+    public static long SourcesDigest(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> fileStream = Files.list(dir)) {
+            fileStream.filter(HoverFileParser::isHoverFileCandidate).forEach(paths::add);
+        }
+
+        paths.sort(null);
+
+        long hash = 0xCBF29CE484222325L ^ paths.size();
+        for (Path p : paths) {
+            BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+
+            hash = (hash ^ p.getFileName().toString().hashCode()) * 0x100000001B3L;
+            hash = (hash ^ attrs.size()) * 0x100000001B3L;
+            hash = (hash ^ attrs.lastModifiedTime().toMillis()) * 0x100000001B3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return The current stamp, or null if nothing has been published, or another client is publishing right now
+     */
+    public Stamp read() throws IOException {
+        try (FileChannel channel = openStamp();
+             FileLock lock = tryLock(channel, true)) {
+            return lock != null ? readStamp(channel) : null;
+        }
+    }
+
+    /**
+     * Loads the defs of the generation `stamp` describes, fully resolved.
+     *
+     * @return The defs, or null if another generation has been published since `stamp` was read, or another client is
+     * publishing right now
+     */
+    public HoverDef[] load(Stamp stamp) throws IOException {
+        try (FileChannel channel = openStamp();
+             FileLock lock = tryLock(channel, true)) {
+            return lock != null ? loadIfCurrent(channel, stamp) : null;
+        }
+    }
+
+    /**
+     * Locks the stamp file exclusively, if no other client has it locked.
+     *
+     * @return The lock, or null if another client has the stamp file locked
+     */
+    public Lock tryLock() throws IOException {
+        FileChannel channel = openStamp();
+
+        try {
+            FileLock lock = tryLock(channel, false);
+            if (lock != null)
+                return new Lock(channel, lock);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        channel.close();
+        return null;
+    }
+
+    /**
+     * The stamp file, held exclusively.
+     */
+    public class Lock implements AutoCloseable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private Lock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        /**
+         * @see SharedHoverIndex#read()
+         */
+        public Stamp read() throws IOException {
+            return readStamp(channel);
+        }
+
+        /**
+         * @see SharedHoverIndex#load(Stamp)
+         */
+        public HoverDef[] load(Stamp stamp) throws IOException {
+            return loadIfCurrent(channel, stamp);
+        }
+
+        /**
+         * Publishes `defs`, which must have been compiled and resolved, as the next generation.
+         *
+         * @param sources     Digest of the hover files the defs were loaded from; see `SourcesDigest`
+         * @param fingerprint Fingerprint of the item catalog the defs were resolved against
+         * @return The new generation
+         */
+        public long publish(List<HoverDef> defs, long sources, long fingerprint) throws IOException {
+            Stamp current = readStamp(channel);
+            long generation = (current != null ? current.generation : 0) + 1;
+
+            HoverBundle.Write(bundlePath(generation), defs, fingerprint);
+
+            ByteBuffer buf = ByteBuffer.allocate(STAMP_SIZE);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(generation).putLong(sources).putLong(fingerprint).flip();
+
+            while (buf.hasRemaining()) {
+                channel.write(buf, buf.position());
+            }
+            channel.truncate(STAMP_SIZE);
+            channel.force(false);
+
+            deleteOlderGenerations(generation);
+
+            log.debug("[CUSTOMITEMHOVERS] Published {} hovers as shared generation {}", defs.size(), generation);
+
+            return generation;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * @return The lock on the whole stamp file, or null if it's locked (by another client, or by another thread)
+     */
+    private static FileLock tryLock(FileChannel channel, boolean shared) throws IOException {
+        try {
+            return channel.tryLock(0, Long.MAX_VALUE, shared);
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private FileChannel openStamp() throws IOException {
+        return FileChannel.open(dir.resolve(STAMP_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private Path bundlePath(long generation) {
+        return dir.resolve(BUNDLE_PREFIX + generation + BUNDLE_SUFFIX);
+    }
+
+    /**
+     * @return The stamp in the (locked) stamp file, or null if there's none, or it's from another version
+     */
+    private static Stamp readStamp(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(STAMP_SIZE);
+
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0)
+                return null;
+        }
+
+        buf.flip();
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+            return null;
+
+        return new Stamp(buf.getLong(), buf.getLong(), buf.getLong());
+    }
+
+    private HoverDef[] loadIfCurrent(FileChannel channel, Stamp stamp) throws IOException {
+        Stamp current = readStamp(channel);
+        if (current == null || current.generation != stamp.generation)
+            return null;
+
+        Path bundle = bundlePath(stamp.generation);
+        HoverFile f = HoverBundle.Load(bundle, null);
+
+        for (int i = 0; i < f.Hovers.length; i++) {
+            f.Hovers[i].SourceFile = bundle.getFileName().toString();
+            f.Hovers[i].SourceIndex = i;
+        }
+
+        return f.Hovers;
+    }
+
+    /**
+     * Deletes the bundles of older generations. Ones which can't be deleted yet (eg. because another client still has
+     * one open) are left for a later generation to delete.
+     */
+    private void deleteOlderGenerations(long generation) {
+        try (Stream<Path> fileStream = Files.list(dir)) {
+            fileStream.forEach(p -> {
+                String name = p.getFileName().toString();
+                if (!name.startsWith(BUNDLE_PREFIX) || !name.endsWith(BUNDLE_SUFFIX))
+                    return;
+
+                try {
+                    long g = Long.parseLong(name.substring(BUNDLE_PREFIX.length(), name.length() - BUNDLE_SUFFIX.length()));
+                    if (g < generation)
+                        Files.deleteIfExists(p);
+                } catch (NumberFormatException | IOException e) {
+                    log.debug("[CUSTOMITEMHOVERS] Couldn't delete {}: {}", name, e.toString());
+                }
+            });
+        } catch (IOException e) {
+            log.debug("[CUSTOMITEMHOVERS] Couldn't list old shared hover generations: {}", e.toString());
+        }
+    }
+}
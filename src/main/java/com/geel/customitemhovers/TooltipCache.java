@@ -0,0 +1,209 @@
+package com.geel.customitemhovers;
+
+import java.util.Arrays;
+
+/**
+ * A bounded LRU cache of finished tooltip strings.
+ *
+ * Entries are keyed by a template's ID plus a `long` built from only the values that template depends on (see
+ * `HoverTemplate.cacheKey`), so a constant template occupies a single entry no matter which item it's shown on.
+ *
+ * Each entry also carries a stamp, for inputs which can't fit in the key: a template which reads quantity totals
+ * stamps its entries with the item's totals version (see `ItemQuantityTable`), and an entry only matches a lookup
+ * with the same stamp.
+ *
+ * Keys are stored in primitive arrays and chained through index arrays, so lookups and insertions of existing
+ * capacity don't allocate.
+ */
+public class TooltipCache {
+    private static final int NONE = -1;
+
+    private final int capacity;
+
+    //Hash buckets; each holds the index of the first entry in its chain
+    private final int[] buckets;
+
+    //Per-entry state
+    private final int[] chain;
+    private final int[] keyTemplates;
+    private final long[] keyValues;
+    private final int[] stamps;
+    private final String[] values;
+
+    //Doubly-linked LRU list through entry indices; `head` is the most recently used
+    private final int[] prev;
+    private final int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public TooltipCache(int capacity) {
+        this.capacity = capacity;
+
+        int bucketCount = Integer.highestOneBit(Math.max(capacity, 8) * 2);
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, NONE);
+
+        chain = new int[capacity];
+        keyTemplates = new int[capacity];
+        keyValues = new long[capacity];
+        stamps = new int[capacity];
+        values = new String[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+
+    /**
+     * @return The cached string for the given key, or null if there is none
+     */
+    public String get(int templateID, long key) {
+        return get(templateID, key, 0);
+    }
+
+    /**
+     * @return The cached string for the given key and stamp, or null if there is none
+     */
+    public String get(int templateID, long key, int stamp) {
+        int e = find(templateID, key);
+
+        if (e != NONE && stamps[e] == stamp) {
+            moveToHead(e);
+            hits++;
+            return values[e];
+        }
+
+        misses++;
+        return null;
+    }
+
+    public void put(int templateID, long key, String value) {
+        put(templateID, key, 0, value);
+    }
+
+    /**
+     * Stores a string under the given key, replacing any entry with an older stamp, and evicting the least recently
+     * used entry if the cache is full.
+     */
+    public void put(int templateID, long key, int stamp, String value) {
+        int e = find(templateID, key);
+
+        if (e != NONE) {
+            stamps[e] = stamp;
+            values[e] = value;
+            moveToHead(e);
+            return;
+        }
+
+        if (size < capacity) {
+            e = size++;
+        } else {
+            e = tail;
+            unlinkFromBucket(e);
+            unlinkFromList(e);
+        }
+
+        keyTemplates[e] = templateID;
+        keyValues[e] = key;
+        stamps[e] = stamp;
+        values[e] = value;
+
+        int b = bucketOf(templateID, key);
+        chain[e] = buckets[b];
+        buckets[b] = e;
+
+        linkAtHead(e);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(values, null);
+        head = NONE;
+        tail = NONE;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The entry with the given key, or NONE
+     */
+    private int find(int templateID, long key) {
+        for (int e = buckets[bucketOf(templateID, key)]; e != NONE; e = chain[e]) {
+            if (keyTemplates[e] == templateID && keyValues[e] == key)
+                return e;
+        }
+
+        return NONE;
+    }
+
+    private int bucketOf(int templateID, long key) {
+        long h = key * 0x9E3779B97F4A7C15L + templateID;
+        h ^= h >>> 29;
+        return (int) h & (buckets.length - 1);
+    }
+
+    private void unlinkFromBucket(int e) {
+        int b = bucketOf(keyTemplates[e], keyValues[e]);
+
+        if (buckets[b] == e) {
+            buckets[b] = chain[e];
+            return;
+        }
+
+        for (int c = buckets[b]; c != NONE; c = chain[c]) {
+            if (chain[c] == e) {
+                chain[c] = chain[e];
+                return;
+            }
+        }
+    }
+
+    private void moveToHead(int e) {
+        if (head == e)
+            return;
+
+        unlinkFromList(e);
+        linkAtHead(e);
+    }
+
+    private void unlinkFromList(int e) {
+        if (prev[e] != NONE)
+            next[prev[e]] = next[e];
+        else
+            head = next[e];
+
+        if (next[e] != NONE)
+            prev[next[e]] = prev[e];
+        else
+            tail = prev[e];
+    }
+
+    private void linkAtHead(int e) {
+        prev[e] = NONE;
+        next[e] = head;
+
+        if (head != NONE)
+            prev[head] = e;
+
+        head = e;
+
+        if (tail == NONE)
+            tail = e;
+    }
+}
@@ -0,0 +1,186 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.InventoryID;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that `HoverExpression` parses and evaluates the expression language as documented, and reports problems in
+ * malformed tokens rather than throwing.
+ */
+public class HoverExpressionTest {
+    private static final double EPSILON = 1e-9;
+
+    //A stack of 12 of item 4151, worth 100 each and 60 each when high-alched
+    private static final HoverContext CTX = new HoverContext().set(4151, 12, 100, 60);
+
+    @Test
+    public void precedence() {
+        assertValue(14, "2 + 3 * 4");
+        assertValue(20, "(2 + 3) * 4");
+        assertValue(4, "7 % 4 + 1");
+        assertValue(-6, "-2 * 3");
+        assertValue(6, "-2 * -3");
+        assertValue(1, "1 + 2 < 4");
+        assertValue(1, "2 < 3 == 4 < 5");
+        assertValue(1, "1 || 0 && 0");
+        assertValue(1, "!1 + 1");
+        assertValue(-1, "-QTY / 12");
+    }
+
+    @Test
+    public void associativity() {
+        assertValue(3, "10 - 4 - 3");
+        assertValue(2, "100 / 10 / 5");
+        assertValue(1, "7 % 4 % 2");
+        assertValue(1, "3 > 2 > 0");
+    }
+
+    @Test
+    public void variables() {
+        assertValue(1200, "QTY * VALUE");
+        assertValue(4151, "ID");
+        assertValue(25, "HIGH_ALCH - VALUE / 4 - 10");
+    }
+
+    @Test
+    public void nestedCalls() {
+        assertValue(4, "max(min(5, 3), abs(-4))");
+        assertValue(3, "round(floor(2.7) + ceil(0.2))");
+        assertValue(7, "max(1, min(9, max(2, 7)))");
+        assertValue(2, "if(QTY >= 10, max(1, 2), 0)");
+        assertValue(1200, "qtymult(<%VALUE%>)");
+        assertValue(720, "qtymult(if(QTY > 1, HIGH_ALCH, VALUE))");
+    }
+
+    @Test
+    public void comparisonsAndLogic() {
+        assertValue(1, "QTY > 5 && VALUE < 200");
+        assertValue(0, "QTY > 5 && VALUE > 200");
+        assertValue(1, "QTY < 5 || VALUE == 100");
+        assertValue(0, "QTY < 5 || VALUE != 100");
+        assertValue(1, "QTY <= 12 && QTY >= 12");
+        assertValue(1, "!(QTY < 5)");
+
+        //Logical operators give exactly 1 or 0, whatever their operands
+        assertValue(1, "5 && 7");
+        assertValue(1, "0 || -3");
+    }
+
+    @Test
+    public void divisionByZeroIsZero() {
+        assertValue(0, "QTY / 0");
+        assertValue(0, "QTY % 0");
+        assertValue(0, "QTY / (VALUE - 100)");
+        assertValue(5, "5 + 1 / 0");
+    }
+
+    @Test
+    public void constantsAreFolded() {
+        HoverExpression expression = parse("60 * 60");
+
+        assertTrue(expression.isConstant());
+        assertEquals(3600, expression.evaluate(null), EPSILON);
+        assertFalse(parse("QTY * 60").isConstant());
+    }
+
+    @Test
+    public void dependencies() {
+        assertEquals(HoverTemplate.DEPENDS_ON_QTY | HoverTemplate.DEPENDS_ON_ID,
+                parse("QTY * VALUE").getDependencies());
+        assertEquals(HoverTemplate.DEPENDS_ON_ID | HoverTemplate.DEPENDS_ON_QTY | HoverTemplate.DEPENDS_ON_PRICE,
+                parse("GE_TOTAL").getDependencies());
+        assertEquals(0, parse("max(1, 2)").getDependencies());
+    }
+
+    @Test
+    public void tokenEnd() {
+        String text = "a <%QTY * 2%> b";
+        int[] end = new int[1];
+
+        assertNotNull(HoverExpression.Parse(text, 2, end, new ArrayList<>()));
+        assertEquals(text.indexOf(" b"), end[0]);
+    }
+
+    @Test
+    public void malformedTokensReportWhereParsingStopped() {
+        assertProblem("<%QTY +%>", "Missing value before `%>` at position 7 of `<%QTY +%>`");
+        assertProblem("<%FOO * 2%>", "Unknown variable `FOO` at position 2 of `<%FOO * 2%>`");
+        assertProblem("<%(1 + 2%>", "Missing `)` at position 8 of `<%(1 + 2%>`");
+        assertProblem("<%1 2%>", "Unexpected `2` at position 4 of `<%1 2%>`");
+        assertProblem("<%QTY", "Missing `%>` at position 5 of `<%QTY`");
+        assertProblem("<%nope(1)%>", "Unknown function `nope`");
+        assertProblem("<%abs(1, 2)%>", "abs");
+        assertProblem("<%max(1, 2%>", "Missing `)` after arguments to max");
+
+        //Positions count from the start of the token, not of the whole text
+        List<String> problems = new ArrayList<>();
+        assertNull(HoverExpression.Parse("Value: <%QTY +%>", 7, new int[1], problems));
+        assertTrue(problems.get(0), problems.get(0).contains("at position 7 of `<%QTY +%>`"));
+    }
+
+    @Test
+    public void malformedConditionsReportWhereParsingStopped() {
+        assertConditionProblem("QTY >", "Missing value at the end at position 5 of `when` clause `QTY >`");
+        assertConditionProblem("QTY > 5 )", "Unexpected `)` at position 8 of `when` clause `QTY > 5 )`");
+        assertConditionProblem("IN_BANK && BAR", "Unknown variable `BAR` at position 11");
+        assertConditionProblem("  ", "Empty condition");
+    }
+
+    @Test
+    public void containerVariablesOnlyInConditions() {
+        HoverExpression condition = HoverExpression.ParseCondition("IN_BANK && QTY >= 10", new ArrayList<>());
+        assertNotNull(condition);
+
+        HoverContext ctx = new HoverContext().set(4151, 12, 100, 60);
+        assertFalse(condition.test(ctx.setContainer(InventoryID.INVENTORY.getId())));
+        assertTrue(condition.test(ctx.setContainer(InventoryID.BANK.getId())));
+
+        for (String text : new String[]{"<%IN_BANK%>", "<%IN_INVENTORY * QTY%>", "<%qtymult(<%IN_VAULT%>)%>"}) {
+            List<String> problems = new ArrayList<>();
+            HoverTemplate.Compile("Here: " + text, problems);
+
+            //A token which contains a nested one, eg qtymult(<%IN_VAULT%>), may report both; the outer one comes first
+            assertFalse(text, problems.isEmpty());
+            assertTrue(problems.get(0), problems.get(0).contains("can only be used in `when` clauses"));
+            assertTrue(problems.get(0), problems.get(0).contains(text));
+        }
+    }
+
+    private static HoverExpression parse(String expression) {
+        List<String> problems = new ArrayList<>();
+        HoverExpression parsed = HoverExpression.Parse("<%" + expression + "%>", 0, new int[1], problems);
+
+        assertEquals(problems.toString(), 0, problems.size());
+        assertNotNull(expression, parsed);
+        return parsed;
+    }
+
+    private static void assertValue(double expected, String expression) {
+        assertEquals(expression, expected, parse(expression).evaluate(CTX), EPSILON);
+    }
+
+    private static void assertProblem(String token, String expected) {
+        List<String> problems = new ArrayList<>();
+
+        assertNull(token, HoverExpression.Parse(token, 0, new int[1], problems));
+        assertEquals(problems.toString(), 1, problems.size());
+        assertTrue(problems.get(0), problems.get(0).contains(expected));
+    }
+
+    private static void assertConditionProblem(String condition, String expected) {
+        List<String> problems = new ArrayList<>();
+
+        assertNull(condition, HoverExpression.ParseCondition(condition, problems));
+        assertEquals(problems.toString(), 1, problems.size());
+        assertTrue(problems.get(0), problems.get(0).contains(expected));
+    }
+}
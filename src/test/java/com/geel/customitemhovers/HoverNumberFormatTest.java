@@ -0,0 +1,135 @@
+package com.geel.customitemhovers;
+
+import org.junit.Test;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks each `HoverNumberFormat` format, and that multiplying for qtymult saturates rather than wrapping around.
+ *
+ * Expected strings are written with `,` and `.` and converted to the default locale's separators, which is what the
+ * formats use.
+ */
+public class HoverNumberFormatTest {
+    private static final DecimalFormatSymbols SYMBOLS = DecimalFormatSymbols.getInstance(Locale.getDefault());
+
+    @Test
+    public void fromName() {
+        assertSame(HoverNumberFormat.GROUPED, HoverNumberFormat.fromName("grouped"));
+        assertSame(HoverNumberFormat.PLAIN, HoverNumberFormat.fromName("plain"));
+        assertSame(HoverNumberFormat.COMPACT, HoverNumberFormat.fromName("compact"));
+        assertEquals("fixed2", HoverNumberFormat.fromName("fixed2").getName());
+        assertNull(HoverNumberFormat.fromName("fixed10"));
+        assertNull(HoverNumberFormat.fromName("Grouped"));
+    }
+
+    @Test
+    public void grouped() {
+        HoverNumberFormat format = HoverNumberFormat.GROUPED;
+
+        assertFormat("0", format, 0, 0);
+        assertFormat("999", format, 999, 0);
+        assertFormat("13,000", format, 13_000, 0);
+        assertFormat("-1,234,567", format, -1_234_567, 0);
+        assertFormat("1,312.5", format, 13_125, 1);
+        assertFormat("0.05", format, 500, 4);
+        assertFormat("9,223,372,036,854,775,807", format, Long.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void plain() {
+        HoverNumberFormat format = HoverNumberFormat.PLAIN;
+
+        assertFormat("13000", format, 13_000, 0);
+        assertFormat("-1234567", format, -1_234_567, 0);
+        assertFormat("1312.5", format, 13_125, 1);
+    }
+
+    @Test
+    public void fixed() {
+        assertFormat("1,312.50", HoverNumberFormat.fromName("fixed2"), 13_125, 1);
+        assertFormat("1,313", HoverNumberFormat.fromName("fixed0"), 13_125, 1);
+        assertFormat("1,312", HoverNumberFormat.fromName("fixed0"), 13_124, 1);
+        assertFormat("0.333", HoverNumberFormat.fromName("fixed3"), 3_333_333, 7);
+        assertFormat("-7.000000000", HoverNumberFormat.fromName("fixed9"), -7, 0);
+    }
+
+    @Test
+    public void compact() {
+        HoverNumberFormat format = HoverNumberFormat.COMPACT;
+
+        assertFormat("999", format, 999, 0);
+        assertFormat("12.5", format, 125, 1);
+        assertFormat("35K", format, 35_000, 0);
+        assertFormat("1.2M", format, 1_250_000, 0);
+        assertFormat("1B", format, 1_000_000_000, 0);
+        assertFormat("3.4T", format, 3_400_000_000_000L, 0);
+        assertFormat("-35K", format, -35_999, 0);
+
+        //Truncated rather than rounded, so a value just under a unit doesn't show as 1000 of the smaller one
+        assertFormat("999K", format, 999_950, 0);
+        assertFormat("999K", format, 999_999_999, 3);
+        assertFormat("1M", format, 1_000_000, 0);
+    }
+
+    @Test
+    public void doubles() {
+        assertDouble("0.3", HoverNumberFormat.GROUPED, 0.1 * 3);
+        assertDouble("2.5", HoverNumberFormat.GROUPED, 2.5);
+        assertDouble("0", HoverNumberFormat.GROUPED, Double.NaN);
+        assertDouble("9,223,372,036,854,775,807", HoverNumberFormat.GROUPED, 1e30);
+        assertDouble("-9,223,372,036,854,775,807", HoverNumberFormat.GROUPED, -1e30);
+    }
+
+    @Test
+    public void multiplySaturated() {
+        assertEquals(0, HoverNumberFormat.multiplySaturated(0, Long.MAX_VALUE));
+        assertEquals(0, HoverNumberFormat.multiplySaturated(Long.MIN_VALUE, 0));
+        assertEquals(1_300_000_000_000L, HoverNumberFormat.multiplySaturated(2_000_000_000, 650));
+        assertEquals(-1_300_000_000_000L, HoverNumberFormat.multiplySaturated(-2_000_000_000, 650));
+        assertEquals(Long.MAX_VALUE, HoverNumberFormat.multiplySaturated(Long.MAX_VALUE, 1));
+        assertEquals(Long.MIN_VALUE, HoverNumberFormat.multiplySaturated(Long.MIN_VALUE, 1));
+        assertEquals(Long.MIN_VALUE, HoverNumberFormat.multiplySaturated(Long.MIN_VALUE / 2, 2));
+
+        //Results which don't fit are clamped, keeping their sign
+        assertEquals(Long.MAX_VALUE, HoverNumberFormat.multiplySaturated(Long.MAX_VALUE / 2 + 1, 2));
+        assertEquals(Long.MIN_VALUE, HoverNumberFormat.multiplySaturated(Long.MAX_VALUE, -2));
+        assertEquals(Long.MAX_VALUE, HoverNumberFormat.multiplySaturated(Long.MIN_VALUE, -1));
+        assertEquals(Long.MAX_VALUE, HoverNumberFormat.multiplySaturated(-3_037_000_500L, -3_037_000_500L));
+        assertEquals(Long.MIN_VALUE, HoverNumberFormat.multiplySaturated(Integer.MAX_VALUE, -5_000_000_000_000L));
+    }
+
+    @Test
+    public void fixedSaturatesWhenScalingUp() {
+        //Long.MAX_VALUE with 9 decimal places doesn't fit, so it's clamped before the decimals are split off
+        assertFormat("9,223,372,036.854775807", HoverNumberFormat.fromName("fixed9"), Long.MAX_VALUE, 0);
+    }
+
+    private static void assertFormat(String expected, HoverNumberFormat format, long unscaled, int scale) {
+        StringBuilder out = new StringBuilder();
+        format.append(out, unscaled, scale);
+
+        assertEquals(format.getName() + " of " + unscaled + "e-" + scale, localize(expected), out.toString());
+    }
+
+    private static void assertDouble(String expected, HoverNumberFormat format, double value) {
+        StringBuilder out = new StringBuilder();
+        format.append(out, value);
+
+        assertEquals(format.getName() + " of " + value, localize(expected), out.toString());
+    }
+
+    private static String localize(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            out.append(c == ',' ? SYMBOLS.getGroupingSeparator() : c == '.' ? SYMBOLS.getDecimalSeparator() : c);
+        }
+
+        return out.toString();
+    }
+}
@@ -0,0 +1,540 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.Client;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.api.ItemComposition;
+import net.runelite.api.ItemContainer;
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import net.runelite.api.events.ItemContainerChanged;
+import net.runelite.api.events.MenuEntryAdded;
+import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.game.ItemManager;
+import net.runelite.client.ui.overlay.tooltip.TooltipManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Drives the whole hover path headlessly, the way the client does every frame: client tick events into the plugin
+ * and `CustomItemHoversOverlay`, then `render`, which hands tooltips to a `TooltipManager`. Sessions of frames (see
+ * `HoverSession`) are replayed against a synthetic catalog of `ITEM_COUNT` items, a full bank and a hover pack loaded
+ * through `HoverFileSet`, and the time and bytes allocated by each frame are recorded.
+ *
+ * The client interfaces (`Client`, `ItemContainer`, `MenuEntry`) are stood in for with proxies whose answers are
+ * boxed up front, so the stand-ins themselves don't allocate while frames are measured. `ItemManager` and
+ * `TooltipManager` are classes: the former is a stub-only mock, like in the benchmarks, and is only used while hovers
+ * are loaded, since item lookups go through the composition table installed with the name map; the latter is real.
+ *
+ * Container hovers are evaluated on the calling thread, so results never depend on a worker's timing.
+ */
+class HoverReplayHarness {
+    static final int ITEM_COUNT = 30_000;
+
+    static final int BANK_SIZE = 800;
+    static final int INVENTORY_SIZE = 28;
+    static final int SEED_VAULT_SIZE = 80;
+
+    //Every HOVERED_STRIDE'th item is targeted by ID; others by name and regex
+    private static final int HOVERED_STRIDE = 3;
+
+    private static final String[] NAME_PREFIXES = {"Bronze", "Iron", "Steel", "Mithril", "Adamant", "Rune", "Dragon",
+            "Grimy", "Ensouled", "Super", "Oak", "Yew", "Magic"};
+
+    private static final String[] NAME_ITEMS = {"platebody", "scimitar", "arrow", "bar", "ore", "logs", "longbow",
+            "ranarr weed", "goblin head", "attack potion", "sapphire", "diamond"};
+
+    //Hover texts covering every kind of template segment
+    private static final String[][] HOVER_TEXTS = {
+            {"<col=47cfd4>Attack Potion</col>", "-Eye of Newt", "-Level 3", "-25 XP"},
+            {"Prayer: 650 (<%qtymult(650)%>)", "Magic: 80 (<%qtymult(80, compact)%>)", "Soul (<%QTY%>)"},
+            {"ID: <%ID%>", "Value: <%VALUE%> (<%qtymult(<%VALUE%>)%>)", "High alch: <%HIGH_ALCH%>"},
+            {"Profit: <%HIGH_ALCH - VALUE%>", "Best: <%max(VALUE, HIGH_ALCH)%>", "XP: <%QTY * 650 / 2%>"},
+            {"GE: <%GE_PRICE%> (<%GE_TOTAL%>)", "Owned: <%TOTAL_QTY%> (bank <%BANK_QTY%>)"},
+    };
+
+    private final Path dir;
+    private final Client client;
+    private final TooltipManager tooltipManager = new TooltipManager();
+    private final CustomItemHoversPlugin plugin = new CustomItemHoversPlugin();
+    private final CustomItemHoversOverlay overlay;
+
+    private final Map<InventoryID, ItemContainer> containers = new EnumMap<>(InventoryID.class);
+    private final Item[] inventory = new Item[INVENTORY_SIZE];
+    private final Item[] bank = new Item[BANK_SIZE];
+    private final Item[] seedVault = new Item[SEED_VAULT_SIZE];
+
+    //Read by the client stand-in
+    private boolean menuOpen = false;
+
+    //The event for each slot of each container, so replaying doesn't build any
+    private final Map<InventoryID, MenuEntryAdded[]> hoverEvents = new EnumMap<>(InventoryID.class);
+
+    //Null if this JVM can't count allocated bytes
+    private final com.sun.management.ThreadMXBean threads;
+    private final long allocationOverhead;
+
+    HoverReplayHarness(long seed) throws Exception {
+        dir = Files.createTempDirectory("customitemhovers-replay");
+        Random random = new Random(seed);
+
+        installCatalog(seed);
+        writeHoverPack(random);
+
+        fill(inventory, random, 0.8);
+        fill(bank, random, 1);
+        fill(seedVault, random, 0.5);
+
+        containers.put(InventoryID.INVENTORY, container(InventoryID.INVENTORY, inventory));
+        containers.put(InventoryID.BANK, container(InventoryID.BANK, bank));
+        containers.put(InventoryID.SEED_VAULT, container(InventoryID.SEED_VAULT, seedVault));
+
+        hoverEvents.put(InventoryID.INVENTORY, hoverEvents(WidgetInfo.INVENTORY.getPackedId(), INVENTORY_SIZE));
+        hoverEvents.put(InventoryID.BANK, hoverEvents(WidgetInfo.BANK_ITEM_CONTAINER.getPackedId(), BANK_SIZE));
+        hoverEvents.put(InventoryID.SEED_VAULT,
+                hoverEvents(WidgetInfo.SEED_VAULT_ITEM_CONTAINER.getPackedId(), SEED_VAULT_SIZE));
+
+        client = client();
+        CustomItemHoversConfig config = new CustomItemHoversConfig() {
+        };
+        HoverMetrics metrics = plugin.getMetrics();
+
+        setField(plugin, "client", client);
+        setField(plugin, "itemManager", itemManager());
+        setField(plugin, "config", config);
+        setField(plugin, "hoverColor", config.defaultHoverColor());
+        setField(plugin, "containerHovers", new ContainerHoverCache(Runnable::run, metrics,
+                getField(plugin, "quantities"), getField(plugin, "prices")));
+
+        HoverFileSet files = new HoverFileSet(HoverDefResolver::Resolve, metrics);
+        files.loadAll(dir);
+        AtomicReference<HoverIndex> hoverIndex = getField(plugin, "hoverIndex");
+        hoverIndex.set(files.buildIndex(ITEM_COUNT));
+
+        overlay = new CustomItemHoversOverlay(client, plugin, tooltipManager);
+
+        if (canMeasureAllocations()) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            threads.setThreadAllocatedMemoryEnabled(true);
+            allocationOverhead = measureAllocationOverhead();
+        } else {
+            threads = null;
+            allocationOverhead = 0;
+        }
+    }
+
+    /**
+     * @return True if this JVM can measure how much each frame allocates
+     */
+    static boolean canMeasureAllocations() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .isThreadAllocatedMemorySupported();
+    }
+
+    Item[] getInventory() {
+        return inventory;
+    }
+
+    Item[] getBank() {
+        return bank;
+    }
+
+    Item[] getSeedVault() {
+        return seedVault;
+    }
+
+    /**
+     * Replays `session`, recording every frame.
+     */
+    FrameStats replay(HoverSession session) {
+        FrameStats stats = new FrameStats(session.getFrameCount());
+        MenuEntryAdded hovered = null;
+
+        for (HoverSession.Step step : session.getSteps()) {
+            switch (step.kind) {
+                case SET:
+                    setSlot(step.container, step.slot, step.itemID, step.quantity);
+                    continue;
+                case HOVER:
+                    hovered = hoverEvents.get(step.container)[step.slot];
+                    menuOpen = false;
+                    break;
+                case MENU:
+                    menuOpen = true;
+                    break;
+                case IDLE:
+                    hovered = null;
+                    menuOpen = false;
+                    break;
+            }
+
+            for (int f = 0; f < step.frames; f++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+
+                frame(hovered);
+
+                long nanos = System.nanoTime() - start;
+                stats.record(nanos, allocatedBytes() - bytes - allocationOverhead,
+                        tooltipManager.getTooltips().size());
+
+                //The client's tooltip overlay draws and then drops every tooltip added during the frame
+                tooltipManager.clear();
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * One client frame: the menu is built (which adds the hovered entry), the client ticks, and overlays render.
+     */
+    private void frame(MenuEntryAdded hovered) {
+        if (hovered != null)
+            overlay.onMenuEntryAdded(hovered);
+
+        plugin.onClientTick(null);
+        overlay.onClientTick(null);
+        overlay.render(null);
+    }
+
+    /**
+     * Changes a slot and sends the ItemContainerChanged event the client would.
+     */
+    private void setSlot(InventoryID container, int slot, int itemID, int quantity) {
+        Item[] items = container == InventoryID.INVENTORY ? inventory
+                : container == InventoryID.BANK ? bank : seedVault;
+        items[slot] = new Item(itemID, quantity);
+
+        ItemContainerChanged event = new ItemContainerChanged(container.getId(), containers.get(container));
+        plugin.onItemContainerChanged(event);
+        overlay.onItemContainerChanged(event);
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return The bytes reading the allocation counter itself allocates, so it can be subtracted from each frame
+     */
+    private long measureAllocationOverhead() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long bytes = allocatedBytes();
+            min = Math.min(min, allocatedBytes() - bytes);
+        }
+
+        return min;
+    }
+
+    /**
+     * Deletes the files the harness wrote.
+     */
+    void close() throws IOException {
+        try (java.util.stream.Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * Installs a catalog of ITEM_COUNT items (each its own canonical item) as the item name map, through its cache
+     * file, with a composition table so the render path never needs `ItemManager`.
+     */
+    private void installCatalog(long seed) throws IOException {
+        Map<String, ArrayList<Integer>> names = new HashMap<>();
+        ItemCompositionTable.Builder compositions = new ItemCompositionTable.Builder(ITEM_COUNT);
+
+        for (int id = 0; id < ITEM_COUNT; id++) {
+            names.computeIfAbsent(itemName(id), n -> new ArrayList<>(1)).add(id);
+            compositions.setCanonicalID(id, id);
+            compositions.setComposition(id, id * 5, id * 3);
+        }
+
+        Path cacheFile = dir.resolve("itemnames.cache");
+        ItemNameMapCache.Save(cacheFile, ITEM_COUNT, seed, names, compositions.build());
+
+        if (!ItemNameMap.PrepareMapFromCache(cacheFile))
+            throw new IllegalStateException("Couldn't install the synthetic catalog");
+
+        Files.delete(cacheFile);
+    }
+
+    private static String itemName(int id) {
+        return NAME_PREFIXES[id % NAME_PREFIXES.length] + " " + NAME_ITEMS[(id / NAME_PREFIXES.length)
+                % NAME_ITEMS.length] + " " + (id / (NAME_PREFIXES.length * NAME_ITEMS.length));
+    }
+
+    /**
+     * Writes a hover pack targeting items by ID, by name and by regex. The defs targeting items by ID also have a box
+     * shown only for big stacks in the bank, and one whose `when` clause never holds.
+     */
+    private void writeHoverPack(Random random) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"is_hover_map\": \"absolutely\",\n  \"hovers\": [\n");
+
+        for (int i = 0; i < HOVER_TEXTS.length; i++) {
+            json.append("    {\"ids\": [");
+            for (int id = i; id < ITEM_COUNT; id += HOVERED_STRIDE * HOVER_TEXTS.length) {
+                if (id != i)
+                    json.append(", ");
+                json.append(id);
+            }
+
+            json.append("], \"items\": [\"").append(itemName(random.nextInt(ITEM_COUNT))).append("\"], ")
+                    .append("\"hovers\": [").append(hoverJson(HOVER_TEXTS[i]))
+                    .append(", {\"when\": \"IN_BANK && QTY >= 100\", \"text\": [\"Banked: <%QTY%>\"]}")
+                    .append(", {\"when\": \"GE_PRICE < 0\", \"text\": [\"Never shown\"]}]},\n");
+        }
+
+        json.append("    {\"items_regex\": [\"Rune .*\", \"(?i).*dragon.*\"], \"hovers\": [")
+                .append(hoverJson(HOVER_TEXTS[2])).append(", ").append(hoverJson(HOVER_TEXTS[4])).append("]}\n");
+        json.append("  ]\n}\n");
+
+        Files.write(dir.resolve("pack.json"), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hoverJson(String[] lines) {
+        StringBuilder json = new StringBuilder("[");
+        for (int l = 0; l < lines.length; l++) {
+            if (l > 0)
+                json.append(", ");
+            json.append('"').append(lines[l].replace("\"", "\\\"")).append('"');
+        }
+
+        return json.append(']').toString();
+    }
+
+    private static void fill(Item[] items, Random random, double fullness) {
+        for (int slot = 0; slot < items.length; slot++) {
+            items[slot] = random.nextDouble() < fullness
+                    ? new Item(random.nextInt(ITEM_COUNT), 1 + random.nextInt(random.nextBoolean() ? 10 : 100_000))
+                    : new Item(-1, 0);
+        }
+    }
+
+    private ItemContainer container(InventoryID id, Item[] items) {
+        Integer boxedId = id.getId();
+
+        return proxy(ItemContainer.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                    return boxedId;
+                case "getItems":
+                    return items;
+                case "getItem":
+                    int slot = (Integer) args[0];
+                    return slot >= 0 && slot < items.length ? items[slot] : null;
+                default:
+                    return unexpected(method.getName());
+            }
+        });
+    }
+
+    private Client client() {
+        Integer itemCount = ITEM_COUNT;
+
+        return proxy(Client.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isMenuOpen":
+                    return menuOpen;
+                case "getItemCount":
+                    return itemCount;
+                case "getItemContainer":
+                    return args[0] instanceof InventoryID ? containers.get(args[0]) : null;
+                default:
+                    return unexpected(method.getName());
+            }
+        });
+    }
+
+    /**
+     * @return An event for hovering each slot of a widget, as the client would send for its left-click option
+     */
+    private static MenuEntryAdded[] hoverEvents(int widgetId, int slots) {
+        MenuEntryAdded[] events = new MenuEntryAdded[slots];
+        Integer boxedWidgetId = widgetId;
+
+        for (int slot = 0; slot < slots; slot++) {
+            Integer boxedSlot = slot;
+
+            MenuEntry entry = proxy(MenuEntry.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getType":
+                        return MenuAction.CC_OP;
+                    case "getParam0":
+                        return boxedSlot;
+                    case "getParam1":
+                        return boxedWidgetId;
+                    case "getOption":
+                        return "Use";
+                    case "getTarget":
+                        return "";
+                    default:
+                        return unexpected(method.getName());
+                }
+            });
+
+            events[slot] = new MenuEntryAdded(entry);
+        }
+
+        return events;
+    }
+
+    /**
+     * A stub-only ItemManager over the catalog, for loading hovers and refreshing prices.
+     */
+    private static ItemManager itemManager() {
+        ItemManager itemManager = mock(ItemManager.class, withSettings().stubOnly());
+        when(itemManager.canonicalize(anyInt())).thenAnswer(inv -> inv.getArgument(0));
+        when(itemManager.getItemPrice(anyInt())).thenAnswer(inv -> inv.<Integer>getArgument(0) * 7);
+        when(itemManager.getItemComposition(anyInt())).thenAnswer(inv -> {
+            int id = inv.getArgument(0);
+            ItemComposition comp = mock(ItemComposition.class, withSettings().stubOnly());
+            when(comp.getPrice()).thenReturn(id * 5);
+            when(comp.getHaPrice()).thenReturn(id * 3);
+            return comp;
+        });
+
+        return itemManager;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + " stand-in";
+                default:
+                    return handler.invoke(proxy, method, args);
+            }
+        });
+    }
+
+    /**
+     * Fails loudly when the plugin starts using something the stand-ins don't cover, rather than getting a default.
+     */
+    private static Object unexpected(String method) {
+        throw new UnsupportedOperationException("Stand-in doesn't implement " + method);
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field f = target.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getField(Object target, String name) throws ReflectiveOperationException {
+        Field f = target.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+
+        return (T) f.get(target);
+    }
+
+    /**
+     * Time and bytes allocated of each replayed frame.
+     */
+    static class FrameStats {
+        private final long[] nanos;
+        private final long[] bytes;
+        private int count = 0;
+        private int tooltipFrames = 0;
+        private int maxTooltips = 0;
+
+        FrameStats(int frames) {
+            nanos = new long[frames];
+            bytes = new long[frames];
+        }
+
+        void record(long frameNanos, long frameBytes, int tooltips) {
+            nanos[count] = frameNanos;
+            bytes[count] = Math.max(0, frameBytes);
+            count++;
+
+            if (tooltips > 0)
+                tooltipFrames++;
+            maxTooltips = Math.max(maxTooltips, tooltips);
+        }
+
+        int getFrames() {
+            return count;
+        }
+
+        /**
+         * @return Number of frames which showed a tooltip
+         */
+        int getTooltipFrames() {
+            return tooltipFrames;
+        }
+
+        /**
+         * @return The most tooltips shown in a single frame
+         */
+        int getMaxTooltips() {
+            return maxTooltips;
+        }
+
+        long getMeanNanos() {
+            return mean(nanos);
+        }
+
+        long getNanosPercentile(double percentile) {
+            return percentile(nanos, percentile);
+        }
+
+        long getMeanBytes() {
+            return mean(bytes);
+        }
+
+        long getMaxBytes() {
+            return percentile(bytes, 1);
+        }
+
+        private long mean(long[] values) {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += values[i];
+            }
+
+            return count == 0 ? 0 : total / count;
+        }
+
+        private long percentile(long[] values, double percentile) {
+            if (count == 0)
+                return 0;
+
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d frames (%d with tooltips, up to %d at once): mean %s, p99 %s, max %s; mean %dB allocated, "
+                    + "max %dB", count, tooltipFrames, maxTooltips, HoverMetrics.formatNanos(getMeanNanos()), HoverMetrics.formatNanos(getNanosPercentile(0.99)),
+                    HoverMetrics.formatNanos(getNanosPercentile(1)), getMeanBytes(), getMaxBytes());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.InventoryID;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays hover sessions through `HoverReplayHarness` and checks every frame stays within its time and allocation
+ * budgets. The budgets are loose on purpose, well above what the path takes on a slow machine, so they only trip on
+ * real regressions (eg. a lookup that went back to scanning, or hovers evaluated again every frame).
+ */
+public class HoverReplayTest {
+    private static final long SEED = 20221;
+
+    //Per frame, on average and at the 99th percentile
+    private static final long MEAN_NANOS_BUDGET = 50_000;
+    private static final long P99_NANOS_BUDGET = 2_000_000;
+
+    //Per frame, on average over a whole session; hovers of container items are evaluated when containers change, so
+    //frames mostly allocate when an item outside of them is hovered
+    private static final long MEAN_BYTES_BUDGET = 256;
+
+    //Per frame while the same item stays hovered: its tooltip is reused, so nothing should be allocated
+    private static final long STEADY_BYTES_BUDGET = 16;
+
+    private static HoverReplayHarness harness;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        harness = new HoverReplayHarness(SEED);
+
+        //Warm up (and JIT) the whole path before anything is measured
+        harness.replay(HoverSession.generate(harness, SEED, 20_000));
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        if (harness != null)
+            harness.close();
+    }
+
+    @Test
+    public void generatedSessionStaysWithinBudget() {
+        HoverReplayHarness.FrameStats stats = harness.replay(HoverSession.generate(harness, SEED + 1, 5_000));
+
+        assertTimeBudget(stats);
+        assertBytesBudget(stats, MEAN_BYTES_BUDGET);
+    }
+
+    @Test
+    public void recordedSessionStaysWithinBudget() throws Exception {
+        HoverReplayHarness.FrameStats stats = harness.replay(HoverSession.read("bank-browse.session"));
+
+        assertTimeBudget(stats);
+        assertBytesBudget(stats, MEAN_BYTES_BUDGET);
+    }
+
+    @Test
+    public void steadyHoverAllocatesNothing() {
+        //Item 0 is targeted by ID; let the first frame build its tooltip, then keep hovering
+        harness.replay(HoverSession.of(HoverSession.set(InventoryID.BANK, 7, 0, 500),
+                HoverSession.hover(InventoryID.BANK, 7, 1)));
+        HoverReplayHarness.FrameStats stats = harness.replay(HoverSession.of(HoverSession.hover(InventoryID.BANK, 7, 2_000)));
+
+        assertEquals("Every frame should show the tooltip: " + stats, stats.getFrames(), stats.getTooltipFrames());
+        assertTimeBudget(stats);
+        assertBytesBudget(stats, STEADY_BYTES_BUDGET);
+    }
+
+    @Test
+    public void conditionalBoxesOnlyShowWhereTheyHold() {
+        //Item 0's def has a box shown only for stacks of 100 or more in the bank
+        harness.replay(HoverSession.of(HoverSession.set(InventoryID.BANK, 7, 0, 500),
+                HoverSession.set(InventoryID.INVENTORY, 0, 0, 500)));
+
+        HoverReplayHarness.FrameStats bank = harness.replay(HoverSession.of(HoverSession.hover(InventoryID.BANK, 7, 50)));
+        HoverReplayHarness.FrameStats inventory = harness.replay(HoverSession.of(HoverSession.hover(InventoryID.INVENTORY, 0, 50)));
+
+        assertTrue("The bank-only box should show in the bank only: bank " + bank + ", inventory " + inventory,
+                bank.getMaxTooltips() > inventory.getMaxTooltips() && inventory.getMaxTooltips() > 0);
+        assertTimeBudget(bank);
+        assertTimeBudget(inventory);
+    }
+
+    private static void assertTimeBudget(HoverReplayHarness.FrameStats stats) {
+        assertTrue("Mean frame time over budget: " + stats, stats.getMeanNanos() <= MEAN_NANOS_BUDGET);
+        assertTrue("p99 frame time over budget: " + stats, stats.getNanosPercentile(0.99) <= P99_NANOS_BUDGET);
+    }
+
+    private static void assertBytesBudget(HoverReplayHarness.FrameStats stats, long meanBytes) {
+        Assume.assumeTrue("Thread allocation counters aren't supported", HoverReplayHarness.canMeasureAllocations());
+
+        assertTrue("Mean bytes allocated per frame over budget: " + stats, stats.getMeanBytes() <= meanBytes);
+    }
+}
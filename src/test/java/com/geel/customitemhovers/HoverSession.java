@@ -0,0 +1,190 @@
+package com.geel.customitemhovers;
+
+import net.runelite.api.InventoryID;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A scripted sequence of what the player does, frame by frame, for `HoverReplayHarness` to replay.
+ *
+ * Sessions are either generated (see `generate`) or read from a recording, one step per line:
+ * <pre>
+ *   hover &lt;inventory|bank|vault&gt; &lt;slot&gt; &lt;frames&gt;   the mouse rests on a slot
+ *   menu &lt;frames&gt;                                   a right-click menu is open
+ *   idle &lt;frames&gt;                                   the mouse isn't over an item
+ *   set &lt;inventory|bank|vault&gt; &lt;slot&gt; &lt;id&gt; &lt;qty&gt;  a slot's contents change before the next frame
+ * </pre>
+ * Blank lines and lines starting with `#` are ignored.
+ */
+class HoverSession {
+    enum Kind {
+        HOVER,
+        MENU,
+        IDLE,
+        SET
+    }
+
+    static class Step {
+        final Kind kind;
+        final InventoryID container;
+        final int slot;
+        final int frames;
+        final int itemID;
+        final int quantity;
+
+        Step(Kind kind, InventoryID container, int slot, int frames, int itemID, int quantity) {
+            this.kind = kind;
+            this.container = container;
+            this.slot = slot;
+            this.frames = frames;
+            this.itemID = itemID;
+            this.quantity = quantity;
+        }
+    }
+
+    private final List<Step> steps;
+
+    private HoverSession(List<Step> steps) {
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return Number of frames the session lasts
+     */
+    int getFrameCount() {
+        int frames = 0;
+        for (Step s : steps) {
+            frames += s.frames;
+        }
+
+        return frames;
+    }
+
+    /**
+     * Reads a recorded session from a classpath resource.
+     */
+    static HoverSession read(String resource) throws IOException {
+        InputStream in = HoverSession.class.getResourceAsStream(resource);
+        if (in == null)
+            throw new IOException("No such session: " + resource);
+
+        List<Step> steps = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                try {
+                    steps.add(parseStep(line.split("\\s+")));
+                } catch (RuntimeException e) {
+                    throw new IOException(resource + ":" + lineNumber + ": can't parse `" + line + "`", e);
+                }
+            }
+        }
+
+        return new HoverSession(steps);
+    }
+
+    private static Step parseStep(String[] parts) {
+        switch (parts[0]) {
+            case "hover":
+                return hover(container(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            case "menu":
+                return new Step(Kind.MENU, null, 0, Integer.parseInt(parts[1]), 0, 0);
+            case "idle":
+                return new Step(Kind.IDLE, null, 0, Integer.parseInt(parts[1]), 0, 0);
+            case "set":
+                return set(container(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                        Integer.parseInt(parts[4]));
+            default:
+                throw new IllegalArgumentException("Unknown step " + parts[0]);
+        }
+    }
+
+    private static InventoryID container(String name) {
+        switch (name) {
+            case "inventory":
+                return InventoryID.INVENTORY;
+            case "bank":
+                return InventoryID.BANK;
+            case "vault":
+                return InventoryID.SEED_VAULT;
+            default:
+                throw new IllegalArgumentException("Unknown container " + name);
+        }
+    }
+
+    static Step hover(InventoryID container, int slot, int frames) {
+        return new Step(Kind.HOVER, container, slot, frames, 0, 0);
+    }
+
+    static Step set(InventoryID container, int slot, int itemID, int quantity) {
+        return new Step(Kind.SET, container, slot, 0, itemID, quantity);
+    }
+
+    static HoverSession of(Step... steps) {
+        List<Step> list = new ArrayList<>();
+        Collections.addAll(list, steps);
+
+        return new HoverSession(list);
+    }
+
+    /**
+     * Generates a session of about `frames` frames: sweeping the mouse across the bank and inventory, resting on some
+     * items, opening menus, and withdrawing and depositing items now and then.
+     */
+    static HoverSession generate(HoverReplayHarness harness, long seed, int frames) {
+        Random random = new Random(seed);
+        List<Step> steps = new ArrayList<>();
+        int total = 0;
+
+        while (total < frames) {
+            int roll = random.nextInt(100);
+            Step step;
+
+            if (roll < 60) {
+                //Sweeping across the bank, a frame or two per slot, or resting on one
+                int slot = random.nextInt(harness.getBank().length);
+                step = hover(InventoryID.BANK, slot, random.nextInt(4) == 0 ? 30 + random.nextInt(120) : 1 + random.nextInt(2));
+            } else if (roll < 80) {
+                step = hover(InventoryID.INVENTORY, random.nextInt(harness.getInventory().length), 1 + random.nextInt(40));
+            } else if (roll < 85) {
+                step = hover(InventoryID.SEED_VAULT, random.nextInt(harness.getSeedVault().length), 1 + random.nextInt(20));
+            } else if (roll < 90) {
+                step = new Step(Kind.MENU, null, 0, 5 + random.nextInt(30), 0, 0);
+            } else if (roll < 95) {
+                step = new Step(Kind.IDLE, null, 0, 1 + random.nextInt(20), 0, 0);
+            } else {
+                //Withdraw-like change: an inventory slot gets a stack of something from the catalog
+                int slot = random.nextInt(harness.getInventory().length);
+                boolean empty = random.nextInt(3) == 0;
+                step = set(InventoryID.INVENTORY, slot, empty ? -1 : random.nextInt(HoverReplayHarness.ITEM_COUNT),
+                        empty ? 0 : 1 + random.nextInt(1000));
+            }
+
+            steps.add(step);
+            total += step.frames;
+        }
+
+        return new HoverSession(steps);
+    }
+}
@@ -0,0 +1,114 @@
+package com.geel.customitemhovers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that `ItemRegexResolver` resolves every def's patterns against the item names, skipping patterns which are
+ * invalid or take too long without losing what the others matched.
+ */
+public class ItemRegexResolverTest {
+    private static final String[] NAMES = {
+            "Dragon dagger",
+            "Dragon sword",
+            "Rune dagger",
+            "Bronze sword",
+            "Shark",
+            //Matched by CATASTROPHIC
+            "a b c d e f g h i j k l x",
+            //Makes CATASTROPHIC backtrack catastrophically
+            "a a a a a a a a a a a a a a a a a a",
+    };
+
+    //Repeats a group with an unbounded quantifier in it; see `RegexGuardTest`
+    private static final String CATASTROPHIC = "(.* ){12}x";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void installCatalog() throws Exception {
+        Map<String, ArrayList<Integer>> names = new HashMap<>();
+        for (int id = 0; id < NAMES.length; id++) {
+            names.computeIfAbsent(NAMES[id], n -> new ArrayList<>(1)).add(id);
+        }
+
+        Path cacheFile = folder.getRoot().toPath().resolve("itemnames.cache");
+        ItemNameMapCache.Save(cacheFile, NAMES.length, 1, names);
+        assertTrue(ItemNameMap.PrepareMapFromCache(cacheFile));
+    }
+
+    @Test
+    public void resolvesEachDefsPatterns() {
+        List<BitSet> resolved = ItemRegexResolver.Resolve(Arrays.asList(
+                def("Dragon .*"),
+                def(".* dagger", "Shark"),
+                def(),
+                def("Nothing matches this")));
+
+        assertEquals(4, resolved.size());
+        assertEquals(names("Dragon dagger", "Dragon sword"), matchedNames(resolved.get(0)));
+        assertEquals(names("Dragon dagger", "Rune dagger", "Shark"), matchedNames(resolved.get(1)));
+        assertEquals(names(), matchedNames(resolved.get(2)));
+        assertEquals(names(), matchedNames(resolved.get(3)));
+    }
+
+    @Test
+    public void skipsCatastrophicPattern() {
+        List<BitSet> resolved = ItemRegexResolver.Resolve(Arrays.asList(
+                def(CATASTROPHIC),
+                def(CATASTROPHIC, ".* sword"),
+                def("Rune .*")));
+
+        //The pattern is dropped entirely, including the name it did match before it was aborted
+        assertEquals(names(), matchedNames(resolved.get(0)));
+        assertEquals(names("Dragon sword", "Bronze sword"), matchedNames(resolved.get(1)));
+        assertEquals(names("Rune dagger"), matchedNames(resolved.get(2)));
+    }
+
+    @Test
+    public void skipsInvalidPattern() {
+        List<BitSet> resolved = ItemRegexResolver.Resolve(Arrays.asList(
+                def("Dragon (dagger"),
+                def("Dragon (dagger", "Shark")));
+
+        assertEquals(names(), matchedNames(resolved.get(0)));
+        assertEquals(names("Shark"), matchedNames(resolved.get(1)));
+    }
+
+    private static HoverDef def(String... regexes) {
+        HoverDef def = new HoverDef();
+        def.SourceFile = "test.json";
+        def.ItemNamesRegex = regexes;
+
+        return def;
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> matchedNames(BitSet nameIndices) {
+        Set<String> names = new HashSet<>();
+        for (int i = nameIndices.nextSetBit(0); i >= 0; i = nameIndices.nextSetBit(i + 1)) {
+            names.add(ItemNameMap.GetNames()[i]);
+        }
+
+        return names;
+    }
+}
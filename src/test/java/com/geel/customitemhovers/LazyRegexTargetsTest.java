@@ -0,0 +1,202 @@
+package com.geel.customitemhovers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an index whose regexes are matched lazily, by `LazyRegexTargets`, gives every item exactly the templates
+ * (in the same order) as one whose regexes were resolved up front by `ItemRegexResolver`.
+ */
+public class LazyRegexTargetsTest {
+    //Item names by ID; the first two items share a name, like an item and its noted form
+    private static final String[] NAMES = {
+            "Dragon dagger",
+            "Dragon dagger",
+            "Dragon sword",
+            "Rune dagger",
+            "Shark",
+            "Cooked karambwan",
+            "Wooden shield",
+            "Bronze boots",
+            "Pineapple",
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void installCatalog() throws Exception {
+        Map<String, ArrayList<Integer>> names = new HashMap<>();
+        for (int id = 0; id < NAMES.length; id++) {
+            names.computeIfAbsent(NAMES[id], n -> new ArrayList<>(2)).add(id);
+        }
+
+        Path cacheFile = folder.getRoot().toPath().resolve("itemnames.cache");
+        ItemNameMapCache.Save(cacheFile, NAMES.length, 1, names);
+        assertTrue(ItemNameMap.PrepareMapFromCache(cacheFile));
+    }
+
+    @Test
+    public void combinablePatterns() {
+        assertSameAsEager(Arrays.asList(
+                def(new int[]{0, 4}, null, null, "by ID"),
+                def(null, null, new String[]{"Dragon .*"}, "dragon"),
+                //Targets Dragon sword by ID, and the daggers (including an item already targeted by ID) by regex
+                def(new int[]{2, 3}, new String[]{"Shark"}, new String[]{".* dagger"}, "daggers", "second box"),
+                //Shares a pattern with an earlier def
+                def(null, null, new String[]{"Dragon .*", ".*apple"}, "dragon or apple"),
+                def(null, null, new String[]{"Nothing is called this"}, "never")));
+    }
+
+    @Test
+    public void backreferencePatterns() {
+        //Backreferences can't be combined, so every name is tested against each pattern
+        assertSameAsEager(Arrays.asList(
+                def(new int[]{6}, null, null, "by ID"),
+                def(null, null, new String[]{".*(o)\\1.*"}, "double o"),
+                def(new int[]{5}, null, new String[]{"(?<letter>[a-z])\\k<letter>.*", "Dragon .*"}, "named group"),
+                def(null, null, new String[]{".*(a).*\\1.*"}, "two a's")));
+    }
+
+    @Test
+    public void invalidPattern() {
+        assertSameAsEager(Arrays.asList(
+                def(new int[]{8}, null, new String[]{"Dragon (dagger"}, "invalid only"),
+                def(null, null, new String[]{"Dragon (dagger", ".* sword"}, "invalid and sword"),
+                def(new int[]{4}, null, new String[]{"Rune .*"}, "rune")));
+    }
+
+    @Test
+    public void itemsWithoutHoversAreRemembered() {
+        HoverIndex index = build(Arrays.asList(def(null, null, new String[]{"Dragon .*"}, "dragon")), true);
+
+        assertNull(index.peek(4));
+        assertNull(index.get(4));
+
+        //Looked up again, the item isn't matched again
+        assertNull(index.get(4));
+        assertNull(index.peek(4));
+
+        //Matching items are remembered the same way
+        assertNull(index.peek(2));
+        HoverTemplate[] templates = index.get(2);
+        assertNotNull(templates);
+        assertSame(templates, index.get(2));
+        assertSame(templates, index.peek(2));
+
+        //Neither item's hovers read a price
+        assertEquals(-1, index.pollLazilyPricedItem());
+    }
+
+    @Test
+    public void onlyItemsGainingPriceHoversArePolled() {
+        HoverIndex index = build(Arrays.asList(
+                def(new int[]{3}, null, null, "<%GE_PRICE%>"),
+                def(null, null, new String[]{".* dagger"}, "<%GE_TOTAL%>"),
+                def(null, null, new String[]{"Shark"}, "no price")), true);
+
+        //Matched, but without a price
+        index.get(4);
+        //Not matched
+        index.get(8);
+        //Matched, but already read a price
+        index.get(3);
+        assertEquals(-1, index.pollLazilyPricedItem());
+
+        index.get(0);
+        index.get(0);
+        assertEquals(0, index.pollLazilyPricedItem());
+        assertEquals(-1, index.pollLazilyPricedItem());
+    }
+
+    @Test
+    public void idsPastTheItemCountAreIgnored() {
+        //A typo'd ID mustn't size the index to fit it
+        for (boolean lazyRegex : new boolean[]{false, true}) {
+            HoverIndex index = build(Arrays.asList(
+                    def(new int[]{4, 999_999_999, NAMES.length}, null, null, "typo"),
+                    def(null, null, new String[]{"Shark"}, "shark")), lazyRegex);
+
+            assertEquals(2, index.get(4).length);
+            assertNull(index.get(NAMES.length));
+            assertNull(index.get(999_999_999));
+        }
+    }
+
+    /**
+     * Builds an index from `defs` both ways, from separate copies, and compares every item's templates.
+     */
+    private static void assertSameAsEager(List<HoverDef> defs) {
+        HoverIndex eager = build(copy(defs), false);
+        HoverIndex lazy = build(copy(defs), true);
+
+        //Looked up twice, so that the second lookup is answered from what was remembered the first time
+        for (int pass = 0; pass < 2; pass++) {
+            for (int id = 0; id < NAMES.length; id++) {
+                assertArrayEquals("Templates of item " + id + " (" + NAMES[id] + ")", eager.get(id), lazy.get(id));
+            }
+        }
+    }
+
+    private static HoverIndex build(List<HoverDef> defs, boolean lazyRegex) {
+        HoverDefResolver.Resolve(defs, NAMES.length, lazyRegex);
+
+        HoverIndex.Builder builder = new HoverIndex.Builder();
+        for (HoverDef d : defs) {
+            builder.add(d);
+        }
+
+        return builder.build(NAMES.length);
+    }
+
+    /**
+     * @return Unresolved copies of `defs`, sharing their templates, so templates of both indexes compare equal
+     */
+    private static List<HoverDef> copy(List<HoverDef> defs) {
+        List<HoverDef> copies = new ArrayList<>(defs.size());
+
+        for (HoverDef d : defs) {
+            HoverDef c = new HoverDef();
+            c.SourceFile = d.SourceFile;
+            c.SourceIndex = d.SourceIndex;
+            c.ItemIDs = d.ItemIDs != null ? d.ItemIDs.clone() : null;
+            c.ItemNames = d.ItemNames;
+            c.ItemNamesRegex = d.ItemNamesRegex;
+            c.Templates = d.Templates;
+            copies.add(c);
+        }
+
+        return copies;
+    }
+
+    private static HoverDef def(int[] ids, String[] names, String[] regexes, String... texts) {
+        HoverDef d = new HoverDef();
+        d.SourceFile = "test.json";
+        d.ItemIDs = ids;
+        d.ItemNames = names;
+        d.ItemNamesRegex = regexes;
+
+        d.Templates = new HoverTemplate[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            d.Templates[i] = HoverTemplate.Compile(texts[i], new ArrayList<>());
+        }
+
+        return d;
+    }
+}
@@ -0,0 +1,90 @@
+package com.geel.customitemhovers;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that `RegexGuard` flags patterns with nested quantifiers, and that `BudgetedMatcher` aborts matches which
+ * backtrack catastrophically.
+ */
+public class RegexGuardTest {
+    //Repeats a group with an unbounded quantifier in it. Newer JDKs memoize simple nested loops such as `(a+)+b`, but
+    //not counted repeats like this one.
+    private static final String CATASTROPHIC = "(.* ){12}x";
+
+    //Doesn't match CATASTROPHIC, but only after trying every way of splitting its words between the 12 repeats
+    private static final String NEAR_MISS = "a a a a a a a a a a a a a a a a a a";
+
+    @Test
+    public void flagsNestedQuantifiers() {
+        assertEquals(4, RegexGuard.FindNestedQuantifier("(a+)+"));
+        assertEquals(8, RegexGuard.FindNestedQuantifier("(\\w+\\s?)*"));
+        assertEquals(14, RegexGuard.FindNestedQuantifier("Dragon (\\w+ ?)+"));
+        assertEquals(8, RegexGuard.FindNestedQuantifier("((ab)*c)+"));
+        assertEquals(7, RegexGuard.FindNestedQuantifier("(a{2,})*"));
+
+        //A group holding an unbounded quantifier, repeated many times
+        assertEquals(5, RegexGuard.FindNestedQuantifier("(.*,){12}"));
+        assertEquals(5, RegexGuard.FindNestedQuantifier("(.*,){2,20}"));
+        assertEquals(5, RegexGuard.FindNestedQuantifier(CATASTROPHIC));
+    }
+
+    @Test
+    public void ignoresSafePatterns() {
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("Dragon .*"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(Rune|Adamant) (sword|dagger)"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(a+)?"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(.*,){3}"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(ab)+"));
+
+        //Parentheses and quantifiers which are literal, or part of an escape
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("[(]+"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("[(a+)]+"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("\\Q(a+)+\\E"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("\\(a+\\)+"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("\\p{Alpha}+"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(\\p{Alpha})+"));
+        assertEquals(-1, RegexGuard.FindNestedQuantifier("(a){x}"));
+    }
+
+    @Test
+    public void preflight() {
+        assertTrue(RegexGuard.Preflight("(a+)+", "test"));
+        assertFalse(RegexGuard.Preflight("Dragon .*", "test"));
+    }
+
+    @Test
+    public void budgetedMatcherMatches() {
+        RegexGuard.BudgetedMatcher matcher = new RegexGuard.BudgetedMatcher(Pattern.compile("Dragon .*"));
+
+        assertTrue(matcher.matches("Dragon dagger"));
+        assertFalse(matcher.matches("Rune dagger"));
+        assertFalse(matcher.matches("Dragon"));
+        assertTrue(matcher.takeSteps() > 0);
+    }
+
+    @Test
+    public void budgetedMatcherAbortsCatastrophicPattern() {
+        RegexGuard.BudgetedMatcher matcher = new RegexGuard.BudgetedMatcher(Pattern.compile(CATASTROPHIC));
+
+        assertTrue(matcher.matches("a a a a a a a a a a a a x"));
+        assertFalse(matcher.matches("Dragon dagger"));
+
+        try {
+            matcher.matches(NEAR_MISS);
+            fail("Matching `" + NEAR_MISS + "` should have exceeded the budget");
+        } catch (RegexGuard.BudgetExceededException e) {
+            //Expected
+        }
+
+        //The aborted match's reads are still counted, and the budget starts over afterwards
+        assertTrue(matcher.takeSteps() > RegexGuard.MATCH_STEPS);
+        assertTrue(matcher.matches("a b c d e f g h i j k l x"));
+    }
+}